@@ -78,8 +78,8 @@ create table libraries (
     street_address text not null,
     city text not null,
     zipcode integer not null,
-    longitude numeric not null,
-    latitude numeric not null,
+    longitude float not null,
+    latitude float not null,
     state_code integer not null,
     county_code integer not null,
 
@@ -1,6 +1,36 @@
 import java.io.*;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.DefaultTableCellRenderer;
 import java.util.function.*;
 import java.sql.*;
 import java.awt.Container;
@@ -8,19 +38,51 @@ import java.awt.BorderLayout;
 import java.awt.FlowLayout;
 import java.awt.event.*;
 import java.awt.Color;
+import com.microsoft.sqlserver.jdbc.ISQLServerBulkData;
+import com.microsoft.sqlserver.jdbc.SQLServerBulkCopy;
+import com.microsoft.sqlserver.jdbc.SQLServerBulkCopyOptions;
+import com.microsoft.sqlserver.jdbc.SQLServerConnection;
 
 public final class App {
 
     public static void main(String[] args) {
 
+        if (args.length >= 3 && args[0].equals("generate")) {
+            long seed = args.length > 3 ? Long.parseLong(args[3]) : SyntheticDataset.DEFAULT_SEED;
+            Benchmark.run(() -> SyntheticDataset.generate(Integer.parseInt(args[1]), seed, args[2]));
+            return;
+        }
+
+        if (args.length >= 1 && args[0].equals("bench-reports")) {
+            DbConfig config = ConfigReader.read("auth.cfg");
+            try (ConnectionPool pool = ConnectionPool.of(config)) {
+                UsLibrariesAnalytics.connectToDb(pool, config.analyticsOptions()).benchmarkIndexes();
+            }
+            return;
+        }
+
+        if (args.length >= 1 && args[0].equals("verify-memory")) {
+            DbConfig config = ConfigReader.read("auth.cfg");
+            try (ConnectionPool pool = ConnectionPool.of(config)) {
+                UsLibrariesAnalytics.connectToDb(pool, config.analyticsOptions()).verifyInMemory();
+            }
+            return;
+        }
+
+        if (args.length >= 1 && args[0].equals("bench-sources")) {
+            SourceBenchmark.run(args.length > 1 ? args[1] : ".");
+            return;
+        }
+
         DbConfig config = ConfigReader.read("auth.cfg");
+        ConnectionPool pool = ConnectionPool.of(config);
         JFrame frame = UI.centerFrame("US Libraries Analyzer");
 
         Runnable disposing = () -> frame.dispose();
         Runnable seedingDb = () -> 
             seedDb(
-                config.username(), 
-                config.password(), 
+                pool,
+                config, 
                 () -> {
                     disposing.run();
                     System.out.println("The database is seeded succesfully\n");
@@ -30,17 +92,17 @@ public final class App {
         JButton btn = UI.button("Seed the database", seedingDb);
         frame.add(btn);
 
-        UsLibrariesAnalytics
-            .connectToDb(
-                config.username(), 
-                config.password())
-            .run(disposing, seedingDb);
+        try (pool) {
+            UsLibrariesAnalytics
+                .connectToDb(pool, config.analyticsOptions())
+                .run(disposing, seedingDb);
+        }
     }
 
-    private static void seedDb(String username, String password, Runnable callback) {
+    private static void seedDb(ConnectionPool pool, DbConfig config, Runnable callback) {
         Benchmark.run(() -> 
             DbLoader
-                .up(SqlServer.connectionUrl(username, password))
+                .up(pool, config.seedOptions())
                 .run());
 
         callback.run();
@@ -103,6 +165,220 @@ final class UI extends JFrame {
         frame.setLocationRelativeTo(null);
         frame.setVisible(true);
     }
+
+    // The model is closed with the window
+    public static void tabulate(PagedTableModel model, String title) {
+        JFrame frame = new JFrame();
+        frame.setTitle(title);
+        frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+        frame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                model.close();
+            }
+        });
+        Container container = frame.getContentPane();
+        JTable table = new JTable(model);
+        table.setDefaultRenderer(Object.class, new ResultCellRenderer());
+        JScrollPane pane = new JScrollPane(table);
+        container.add(pane, BorderLayout.CENTER);
+        frame.setSize(1000, 500);
+        frame.setLocationRelativeTo(null);
+        frame.setVisible(true);
+    }
+}
+
+// Formats a cell of typed report columns as it is painted, numbers right aligned
+final class ResultCellRenderer extends DefaultTableCellRenderer {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected void setValue(Object value) {
+        setHorizontalAlignment(value instanceof Number ? SwingConstants.RIGHT : SwingConstants.LEFT);
+        setText(ResultColumns.format(value));
+    }
+}
+
+// Table of a report's rows read a page at a time as they scroll into view.
+// Pages are typed ResultColumns, formatted by the table's renderer.
+// The first page is read before the window opens; a page that is painted
+// but not held yet is read on the model's own thread and blank until then,
+// and the page after the last one painted is read ahead. At most
+// PAGES_HELD pages are held, the least recently painted dropped first, so
+// memory stays bounded however many rows the report has. Rows fitting one
+// page are read at once and closed. Larger ones keep their cursor and its
+// pooled connection while the model is among the CURSORS_HELD read most
+// recently; an older model's cursor is closed, and its query run again if
+// it reads another page, so open windows cannot hold every connection
+final class PagedTableModel extends AbstractTableModel implements AutoCloseable {
+
+    private static final long serialVersionUID = 1L;
+
+    // Runs the report's query again, for a model whose cursor was released
+    @FunctionalInterface
+    interface Reopen {
+        ReportRows rows() throws SQLException;
+    }
+
+    public static final int PAGE_ROWS = 500;
+    private static final int PAGES_HELD = 8;
+    private static final int CURSORS_HELD = 4;
+
+    // Models holding a database cursor, least recently read first
+    private static final Set<PagedTableModel> HOLDING = new LinkedHashSet<>();
+
+    // Used on the reader thread once open, null while released
+    private ReportRows rows;
+    private final Reopen reopen;
+    private final String[] header;
+    private final ResultColumns.Layout layout;
+    private final int rowCount;
+    private final ExecutorService reader;
+    private final Set<Integer> reading = new HashSet<>();
+    private boolean closed;
+
+    private final Map<Integer, ResultColumns> pages = new LinkedHashMap<Integer, ResultColumns>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, ResultColumns> eldest) {
+            return size() > PAGES_HELD;
+        }
+    };
+
+    private PagedTableModel(ReportRows rows, Reopen reopen, String[] header, ResultColumns.Layout layout, int rowCount) {
+        this.rows = rows;
+        this.reopen = reopen;
+        this.header = header;
+        this.layout = layout;
+        this.rowCount = rowCount;
+        this.reader = complete() ? null : Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "report pages");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Shows the labelled columns under the header. Sizes the rows and reads
+    // the first page on the calling thread. Rows without reopen, like
+    // in-memory ones, hold no connection and are kept
+    public static PagedTableModel open(ReportRows rows, Reopen reopen, String[] header, String[] labels) throws SQLException {
+        PagedTableModel model = new PagedTableModel(rows, reopen, header, ResultColumns.layout(rows, labels), rows.size());
+        model.pages.put(0, model.read(0));
+        if (model.complete()) rows.close();
+        else model.hold();
+        return model;
+    }
+
+    // Whether every row is in the first page, so nothing is left to read
+    public boolean complete() {
+        return rowCount <= PAGE_ROWS;
+    }
+
+    private ResultColumns read(int page) throws SQLException {
+        if (rows == null) rows = reopen.rows();
+        int first = page * PAGE_ROWS, count = Math.min(PAGE_ROWS, rowCount - first);
+        ResultColumns records = new ResultColumns(layout, count);
+        rows.seek(first);
+        while (records.size() < count && rows.next()) records.add(rows);
+        records.seal();
+        return records;
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return header.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return header[column];
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        int page = row / PAGE_ROWS;
+        ResultColumns records;
+        synchronized (this) {
+            records = pages.get(page);
+        }
+
+        if (records == null) request(page);
+        if ((page + 1) * PAGE_ROWS < rowCount) request(page + 1);
+        if (records == null || row - page * PAGE_ROWS >= records.size()) return null;
+
+        return records.value(row - page * PAGE_ROWS, column);
+    }
+
+    private synchronized void request(int page) {
+        if (closed || reader == null || pages.containsKey(page) || !reading.add(page)) return;
+        reader.execute(() -> {
+            ResultColumns records;
+            try {
+                hold();
+                records = read(page);
+            } catch (SQLException e) {
+                System.out.println("--- Failed to read rows " + page * PAGE_ROWS + " and on: " + e.getMessage() + " ---");
+                close();
+                return;
+            } finally {
+                synchronized (this) {
+                    reading.remove(page);
+                }
+            }
+
+            synchronized (this) {
+                pages.put(page, records);
+            }
+            int first = page * PAGE_ROWS;
+            SwingUtilities.invokeLater(() -> fireTableRowsUpdated(first, first + records.size() - 1));
+        });
+    }
+
+    // Makes the model the most recently read, releasing the eldest beyond CURSORS_HELD
+    private void hold() {
+        if (reopen == null) return;
+        PagedTableModel eldest = null;
+        synchronized (HOLDING) {
+            HOLDING.remove(this);
+            HOLDING.add(this);
+            if (HOLDING.size() > CURSORS_HELD) {
+                eldest = HOLDING.iterator().next();
+                HOLDING.remove(eldest);
+            }
+        }
+        if (eldest != null) eldest.release();
+    }
+
+    // Closes the cursor once a page being read is done, keeping the pages held
+    private synchronized void release() {
+        if (!closed) reader.execute(this::closeRows);
+    }
+
+    private void closeRows() {
+        try {
+            if (rows != null) rows.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        rows = null;
+    }
+
+    // Closes the rows once a page being read is done
+    @Override
+    public synchronized void close() {
+        if (closed || reader == null) return;
+        closed = true;
+        synchronized (HOLDING) {
+            HOLDING.remove(this);
+        }
+        reader.execute(this::closeRows);
+        reader.shutdown();
+    }
 }
 
 // Queries
@@ -110,38 +386,47 @@ final class UsLibrariesAnalytics {
 
     private static final int DEFAULT_QUERY_RUNNER_KEY = 0;
 
-    private final Map<String, CacheRecord> cache = new HashMap<>();
-    private long cacheLastCleared = System.currentTimeMillis();
+    // Reports fill the cache from their own threads
+    private final Map<String, CacheRecord> cache = new ConcurrentHashMap<>();
+    private volatile long cacheLastCleared = System.currentTimeMillis();
+
+    // Totals of report 1, and the backend they were read from
+    private RevenueIndex revenueIndex;
+    private boolean revenueIndexOffline;
+
+    // Coordinates of the libraries near a point report, and the backend they were read from
+    private GeoIndex geoIndex;
+    private boolean geoIndexOffline;
 
     private static class CacheRecord {
         final String title;
-        final String[] header;
-        final String[][] records;
+        final PagedTableModel records;
 
-        public CacheRecord(String title, String[] header, String[][] records) {
+        public CacheRecord(String title, PagedTableModel records) {
             this.title = title;
-            this.header = header;
             this.records = records;
         }
     }
 
-    private final Connection connection;
+    private final ConnectionPool pool;
+    private final AnalyticsOptions options;
     private final Map<Integer, QueryRunner> runners = new HashMap<>();
+    private final ReportExecutor executor = new ReportExecutor();
+    private ReportEngine engine;
 
-    public static UsLibrariesAnalytics connectToDb(String username, String password) {
-        Connection connection = null;
-
+    public static UsLibrariesAnalytics connectToDb(ConnectionPool pool, AnalyticsOptions options) {
         try {
-            connection = DriverManager.getConnection(SqlServer.connectionUrl(username, password));
-        } catch (SQLException e) { }
+            pool.prefill();
+        } catch (SQLException e) {
+            pool = null;
+        }
 
-        return new UsLibrariesAnalytics(connection);
+        return new UsLibrariesAnalytics(pool, options);
     }
 
     public void run(Runnable disposing, Runnable seedingDb) {
-        if (connection == null) {
-            System.out.println("Failed to load the database");
-            return;
+        if (pool == null) {
+            System.out.println("Failed to load the database, the reports run in memory");
         }
 
         reportsDirectory();
@@ -151,11 +436,30 @@ final class UsLibrariesAnalytics {
 
         disposing.run();
 
-        if (!isDbSeeded(connection)) seedingDb.run();
+        if (pool != null && !isDbSeeded()) seedingDb.run();
         
         while (line != null && !line.equals("q")) {
             String[] inputs = line.trim().split(Delimiter.SPACE);
 
+            if (inputs[0].equals("s")) {
+                printStatementCache();
+                line = scanner.nextLine();
+                continue;
+            }
+
+            if (inputs[0].equals("c")) {
+                cancelReports(inputs);
+                line = scanner.nextLine();
+                continue;
+            }
+
+            List<QueryRunner> selected = selection(inputs);
+            if (selected != null) {
+                runReports(selected);
+                line = scanner.nextLine();
+                continue;
+            }
+
             if (inputs.length == 0 || !Arithmetic.isInteger(inputs[0])) {
                 System.out.println("--- Please enter a number ---");
                 reportsDirectory();
@@ -164,17 +468,22 @@ final class UsLibrariesAnalytics {
             }
 
             int key = Integer.parseInt(inputs[0]);
-            runners
-                .getOrDefault(
-                    key, 
-                    runners.get(DEFAULT_QUERY_RUNNER_KEY))
-                .run(() -> reportsDirectory());
+            QueryRunner runner = runners.getOrDefault(key, runners.get(DEFAULT_QUERY_RUNNER_KEY));
+
+            if (inputs.length > 1 && !selectBackend(runner, inputs[1])) {
+                reportsDirectory();
+                line = scanner.nextLine();
+                continue;
+            }
+
+            runner.run(executor, () -> reportsDirectory());
 
             line = scanner.nextLine();
         }
 
         JOptionPane.showMessageDialog(null, "Thank you for using our services");
         scanner.close();
+        close();
     }
 
     private static class SqlQuery {
@@ -263,6 +572,16 @@ final class UsLibrariesAnalytics {
                 "from libraries " +
                 "join states on libraries.state_code = states.state_code " +
                 "join counties on libraries.state_code = counties.state_code and libraries.county_code = counties.county_code",
+
+            libraries_with_coordinates =
+                "select " +
+                    "library_name, " +
+                    "city, " +
+                    "state_alpha_code, " +
+                    "latitude, " +
+                    "longitude " +
+                "from libraries " +
+                "join states on libraries.state_code = states.state_code",
             
             top_10_most_expensive_libraries_to_run =
                 "select top 10 " +
@@ -366,6 +685,16 @@ final class UsLibrariesAnalytics {
         private String header;
         private String body;
 
+        // Answer of the in-memory engine, and whether the report runs on it
+        private Function<String[], ReportRows> inMemory;
+        private boolean offline;
+
+        // Seconds the database may spend on one execution, 0 for no limit
+        private int timeout;
+
+        // Columns the report shows, by label, and their titles
+        private String[] labels = {}, titles = {};
+
         public Query() {
             this.key = index;
             index++;
@@ -396,7 +725,7 @@ final class UsLibrariesAnalytics {
             private Query query;
             private Consumer<Query> running;
             private BiConsumer<Query, String[]> runningWithArgs;
-            private Set<String> args = new HashSet<>();
+            private Set<String> args = new LinkedHashSet<>();
 
             public Builder() {
                 query = new Query();
@@ -412,6 +741,19 @@ final class UsLibrariesAnalytics {
                 return this;
             }
 
+            public Builder inMemory(Function<String[], ReportRows> inMemory) {
+                query.inMemory = inMemory;
+                return this;
+            }
+
+            public Builder column(String label, String title) {
+                query.labels = Arrays.copyOf(query.labels, query.labels.length + 1);
+                query.titles = Arrays.copyOf(query.titles, query.titles.length + 1);
+                query.labels[query.labels.length - 1] = label;
+                query.titles[query.titles.length - 1] = title;
+                return this;
+            }
+
             public Builder toRun(Consumer<Query> running) {
                 this.running = running;
                 return this;
@@ -435,7 +777,7 @@ final class UsLibrariesAnalytics {
         private Query query;
         private Consumer<Query> running;
         private BiConsumer<Query, String[]> runningWithArgs;
-        private Set<String> args = new HashSet<>();
+        private Set<String> args = new LinkedHashSet<>();
 
         private QueryRunner(Builder builder) {
             this.query = builder.query;
@@ -446,7 +788,7 @@ final class UsLibrariesAnalytics {
 
         @Override
         public String toString() {
-            return key() + " " + this.query.header;
+            return key() + " " + this.query.header + (this.query.offline ? " (in memory)" : "");
         }
 
         public int key() {
@@ -457,17 +799,23 @@ final class UsLibrariesAnalytics {
             return new Builder();
         }
 
-        public void run(Runnable callback) {
-            if (args.size() > 0) applyArgs(callback);
-            else noArgs(callback);
+        // Returns once the report is submitted, the callback runs when it completes
+        public void run(ReportExecutor executor, Runnable callback) {
+            if (args.size() > 0) applyArgs(executor, callback);
+            else noArgs(executor, callback);
         }
 
-        private void noArgs(Runnable callback) {
-            Benchmark.run(() -> running.accept(query));
-            callback.run();
+        private void noArgs(ReportExecutor executor, Runnable callback) {
+            submit(executor).future().whenComplete((done, error) -> callback.run());
         }
 
-        private void applyArgs(Runnable callback) {
+        // Runs a report without parameters
+        private ReportExecutor.Task submit(ReportExecutor executor) {
+            return executor.submit(key(), query.header, query.timeout, () -> running.accept(query));
+        }
+
+        // The form stays open with a Cancel button while the report runs
+        private void applyArgs(ReportExecutor executor, Runnable callback) {
             String[] argsArray = args.toArray(String[]::new);
 
             JTextField[] textFields = new JTextField[args.size()];
@@ -481,6 +829,10 @@ final class UsLibrariesAnalytics {
             form.setTitle(query.header + " ( " + args.size() + " parameters)");
 
             JButton submit = new JButton("Submit");
+            JButton cancel = new JButton("Cancel");
+            cancel.setEnabled(false);
+            AtomicReference<ReportExecutor.Task> submitted = new AtomicReference<>();
+
             ActionListener listener = e -> {
                 if (e.getSource() == submit) {
                     String[] inputs = new String[args.size()];
@@ -488,13 +840,21 @@ final class UsLibrariesAnalytics {
                         inputs[i] = textFields[i].getText();
                     }
 
-                    Benchmark.run(args -> runningWithArgs.accept(query, args), inputs);
-                    callback.run();
-                    form.dispose();
+                    submit.setEnabled(false);
+                    cancel.setEnabled(true);
+                    ReportExecutor.Task task = executor.submit(key(), query.header, query.timeout, () -> runningWithArgs.accept(query, inputs));
+                    submitted.set(task);
+                    task.future().whenComplete((done, error) -> {
+                        callback.run();
+                        SwingUtilities.invokeLater(form::dispose);
+                    });
+                } else if (e.getSource() == cancel && submitted.get() != null) {
+                    submitted.get().cancel();
                 }
             };
 
             submit.addActionListener(listener);
+            cancel.addActionListener(listener);
 
             Container container = form.getContentPane();
             container.setLayout(new FlowLayout());
@@ -543,14 +903,217 @@ final class UsLibrariesAnalytics {
             }
 
             container.add(submit);
+            container.add(cancel);
             form.setVisible(true);
         }
     }
 
-    private UsLibrariesAnalytics(Connection connection) {
-        if (connection == null) throw new RuntimeException("Failed to connect to database");
-        this.connection = connection;
+    // Without a database the reports can still run in memory, when that is the configured backend
+    private UsLibrariesAnalytics(ConnectionPool pool, AnalyticsOptions options) {
+        if (pool == null && !options.inMemory()) throw new RuntimeException("Failed to connect to database");
+        this.pool = pool;
+        this.options = options;
         registerQueryRunners();
+
+        for (QueryRunner runner : runners.values()) {
+            runner.query.offline = runner.query.inMemory != null && (options.inMemory() || pool == null);
+            runner.query.timeout = options.timeoutSeconds(runner.key());
+        }
+    }
+
+    // Switches a report between the database and the in-memory engine
+    private boolean selectBackend(QueryRunner runner, String backend) {
+        boolean inMemory = backend.equalsIgnoreCase(AnalyticsOptions.MEMORY);
+        if (runner.query.inMemory == null || !inMemory && !backend.equalsIgnoreCase(AnalyticsOptions.SQL)) {
+            System.out.println("--- Please follow the number with " + AnalyticsOptions.SQL + " or " + AnalyticsOptions.MEMORY + " ---");
+            return false;
+        }
+
+        if (!inMemory && pool == null) {
+            System.out.println("--- There is no database connection ---");
+            return false;
+        }
+
+        if (runner.query.offline != inMemory) cache.remove(runner.query.header);
+        runner.query.offline = inMemory;
+        return true;
+    }
+
+    // Loads the data files when the first report runs in memory
+    private synchronized ReportEngine engine() {
+        if (engine == null) {
+            long start = System.nanoTime();
+            try {
+                engine = ReportEngine.open(options.dataDir(), options.snapshot());
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            System.out.println(String.format("Loaded the in-memory engine in %.1f ms", (System.nanoTime() - start) / 1e6));
+        }
+        return engine;
+    }
+
+    private ReportRows execute(Query query, String... args) throws SQLException {
+        return execute(query, query.offline, false, args);
+    }
+
+    private ReportRows execute(Query query, boolean inMemory, String... args) throws SQLException {
+        return execute(query, inMemory, false, args);
+    }
+
+    // The connection and its cached statement are borrowed until the rows
+    // are closed. A report that lost its connection runs once more on a
+    // fresh one from the pool
+    private ReportRows execute(Query query, boolean inMemory, boolean scrollable, String... args) throws SQLException {
+        ReportExecutor.Task task = ReportExecutor.current();
+        if (inMemory) {
+            if (task != null) task.checkCancelled();
+            return query.inMemory.apply(args);
+        }
+
+        try {
+            return executeOnce(query, task, scrollable, args);
+        } catch (SQLException e) {
+            if (!ConnectionPool.isConnectionFailure(e) || task != null && task.cancelled()) throw e;
+            return executeOnce(query, task, scrollable, args);
+        }
+    }
+
+    // The statement stays attached to the report's task until the rows are closed, so cancelling reaches it
+    private ReportRows executeOnce(Query query, ReportExecutor.Task task, boolean scrollable, String... args) throws SQLException {
+        Connection connection = pool.borrow();
+        StatementCache statements = ((ConnectionPool.Lease) connection).statements();
+        PreparedStatement statement = null;
+        try {
+            statement = statements.borrow(query.body, scrollable);
+            if (scrollable) statement.setFetchSize(PagedTableModel.PAGE_ROWS);
+            statement.setQueryTimeout(query.timeout);
+            if (task != null) task.attach(statement);
+            for (int i = 0; i < args.length; i++) statement.setString(i + 1, args[i]);
+            PreparedStatement executed = statement;
+            return new JdbcReportRows(statement.executeQuery(), () -> {
+                if (task != null) task.detach(executed);
+                try {
+                    statements.release(query.body, executed);
+                } finally {
+                    connection.close();
+                }
+            });
+        } catch (SQLException e) {
+            if (task != null && statement != null) task.detach(statement);
+            if (statement != null) statements.discard(statement);
+            if (ConnectionPool.isConnectionFailure(e)) ((ConnectionPool.Lease) connection).invalidate();
+            connection.close();
+            throw e;
+        }
+    }
+
+    private static final Pattern KEY_RANGE = Pattern.compile("(\\d+)-(\\d+)");
+
+    // A line selecting several reports: keys, ranges such as 1-14 or "all",
+    // optionally followed by the backend to run them on. Null for any other
+    // line. Reports taking parameters only run on their own
+    private List<QueryRunner> selection(String[] inputs) {
+        int end = inputs.length;
+        String backend = null;
+        if (end > 1 && (inputs[end - 1].equalsIgnoreCase(AnalyticsOptions.SQL) || inputs[end - 1].equalsIgnoreCase(AnalyticsOptions.MEMORY))) {
+            backend = inputs[--end];
+        }
+
+        Set<Integer> keys = new LinkedHashSet<>();
+        boolean several = false;
+        for (int i = 0; i < end; i++) {
+            String input = inputs[i];
+            Matcher range = KEY_RANGE.matcher(input);
+            if (input.equalsIgnoreCase("all")) {
+                for (int key = 1; key < runners.size(); key++) keys.add(key);
+                several = true;
+            } else if (range.matches()) {
+                int from = Integer.parseInt(range.group(1)), to = Integer.parseInt(range.group(2));
+                for (int key = Math.min(from, to); key <= Math.max(from, to); key++) keys.add(key);
+                several = true;
+            } else if (Arithmetic.isInteger(input)) {
+                keys.add(Integer.parseInt(input));
+            } else if (!input.isEmpty()) {
+                return null;
+            }
+        }
+        if (!several && keys.size() < 2) return null;
+
+        List<QueryRunner> selected = new ArrayList<>();
+        for (int key : keys) {
+            QueryRunner runner = runners.get(key);
+            if (runner == null || key == DEFAULT_QUERY_RUNNER_KEY) {
+                System.out.println("--- There is no report " + key + " ---");
+            } else if (runner.args.size() > 0) {
+                System.out.println("--- Report " + key + " takes parameters, please run it on its own ---");
+            } else if (backend == null || selectBackend(runner, backend)) {
+                selected.add(runner);
+            }
+        }
+        return selected;
+    }
+
+    // Runs the reports at once, each on a connection of its own from the
+    // pool, and prints the wall-clock time of the selection next to the sum
+    // of the reports' times, what running them one after another would take
+    private void runReports(List<QueryRunner> selected) {
+        if (selected.isEmpty()) {
+            reportsDirectory();
+            return;
+        }
+
+        long start = System.nanoTime();
+        List<ReportExecutor.Task> tasks = new ArrayList<>();
+        for (QueryRunner runner : selected) tasks.add(runner.submit(executor));
+
+        CompletableFuture<?>[] runs = new CompletableFuture<?>[tasks.size()];
+        for (int i = 0; i < runs.length; i++) runs[i] = tasks.get(i).future();
+        CompletableFuture.allOf(runs).whenComplete((done, error) -> {
+            double wall = (System.nanoTime() - start) / 1e6, sum = 0;
+            for (ReportExecutor.Task task : tasks) sum += task.millis();
+            System.out.println(String.format("%d reports finished in %.1f ms, %.1f ms one after another", tasks.size(), wall, sum));
+            reportsDirectory();
+        });
+    }
+
+    // Cancels the reports still running. The pool belongs to the caller, which closes it
+    public void close() {
+        executor.close();
+        if (pool != null) System.out.println(pool.summary());
+    }
+
+    // "c" cancels every running report, "c <n>" the runs of report n
+    private void cancelReports(String[] inputs) {
+        if (inputs.length > 1 && !Arithmetic.isInteger(inputs[1])) {
+            System.out.println("--- Please follow c with a report number ---");
+            return;
+        }
+
+        int key = inputs.length > 1 ? Integer.parseInt(inputs[1]) : -1;
+        if (executor.cancel(key) == 0) System.out.println("--- No such report is running ---");
+    }
+
+    private void printStatementCache() {
+        if (pool == null) return;
+        List<StatementCache> caches = pool.statementCaches();
+        System.out.println(String.format("%-4s %8s %8s", "", "hits", "prepares"));
+        for (int key = 1; key < runners.size(); key++) {
+            String sql = runners.get(key).query.body;
+            long hits = 0, prepares = 0;
+            for (StatementCache statements : caches) {
+                hits += statements.hits(sql);
+                prepares += statements.prepares(sql);
+            }
+            System.out.println(String.format("%-4d %8d %8d", key, hits, prepares));
+        }
+        long hits = 0, prepares = 0;
+        for (StatementCache statements : caches) {
+            hits += statements.hits();
+            prepares += statements.prepares();
+        }
+        System.out.println(String.format("%-4s %8d %8d", "all", hits, prepares));
+        System.out.println(pool.summary());
     }
 
     private void registerQueryRunners() {
@@ -566,14 +1129,18 @@ final class UsLibrariesAnalytics {
             .header("Library with total operating revenue closest to n US dollars")
             .body(SqlQuery.libraries_ordered_by_total_operating_revenue)
             .toRun(this::librariesOrderedByTotalOperatingRevenue)
-            .args("n")
+            .inMemory(args -> engine().librariesOrderedByTotalOperatingRevenue())
+            .args("n (one or more, comma separated, or low..high)", "k (closest libraries per n, default 1)")
             .build();
         runners.put(runner.key(), runner);
 
         runner = QueryRunner.builder()
             .header("Libraries with ID of id_1 or id_2")
             .body(SqlQuery.libraries_with_id_of_id1_or_id2)
-            .toRun(this::LibrariesWithIdOfId1OrId2)
+            .column("library_id", "Library ID")
+            .column("library_name", "Library")
+            .toRun(this::tabulateReportWithArgs)
+            .inMemory(args -> engine().librariesWithIdOfId1OrId2(args[0], args[1]))
             .args("id_1 (e.g. AK0001)", "id_2 (e.g. WY0023)")
             .build();
         runners.put(runner.key(), runner);
@@ -581,42 +1148,69 @@ final class UsLibrariesAnalytics {
         runner = QueryRunner.builder()
             .header("Average state licensed databases per library for counties that belong to states with less than 5 counties")
             .body(SqlQuery.average_state_licensed_databases_per_library_for_counties_that_belong_to_states_with_less_than_5_counties)
-            .toRun(this::averageStateLicensedDatabasesPerLibraryForCountiesThatBelongToStatesWithLessThan5Counties)
+            .column("county_code", "County Code")
+            .column("state_code", "State Code")
+            .column("average_state_licensed_databases_per_library_for_county", "Average State Licensed Databases per Library for County")
+            .toRun(this::tabulateReport)
+            .inMemory(args -> engine().averageStateLicensedDatabasesPerLibraryForCountiesThatBelongToStatesWithLessThan5Counties())
             .build();
         runners.put(runner.key(), runner);
 
         runner = QueryRunner.builder()
             .header("Top 10 libraries with the highest average pay per employee")
             .body(SqlQuery.top_10_libraries_with_highest_average_pay)
-            .toRun(this::Top10LibrariesWithHighestAveragePayPerEmployee)
+            .column("library_name", "Library")
+            .column("average_pay", "Average Pay")
+            .toRun(this::tabulateReport)
+            .inMemory(args -> engine().top10LibrariesWithHighestAveragePay())
             .build();
         runners.put(runner.key(), runner);
 
         runner = QueryRunner.builder()
             .header("Schools with their state's total population")
             .body(SqlQuery.schools_with_state_population)
-            .toRun(this::schoolsWithStateTotalPopulation)
+            .column("school_name", "School")
+            .column("state_alpha_code", "State Alpha Code")
+            .column("state_population", "State Population")
+            .toRun(this::tabulateReport)
+            .inMemory(args -> engine().schoolsWithStatePopulation())
             .build();
         runners.put(runner.key(), runner);    
 
         runner = QueryRunner.builder()
             .header("Top 10 counties ordered by libraries count then by schools count")
             .body(SqlQuery.top_10_counties_ordered_by_libraries_count_then_by_schools_count)
-            .toRun(this::top10CountiesOrderedByLibrariesCountThenBySchoolsCount)
+            .column("county_code", "County Code")
+            .column("state_code", "State Code")
+            .column("libraries_count", "Libraries")
+            .column("schools_count", "Schools")
+            .toRun(this::tabulateReport)
+            .inMemory(args -> engine().top10CountiesOrderedByLibrariesCountThenBySchoolsCount())
             .build();
         runners.put(runner.key(), runner);
 
         runner = QueryRunner.builder()
             .header("Top 10 most expensive libraries to run")
             .body(SqlQuery.top_10_most_expensive_libraries_to_run)
-            .toRun(this::top10MostExpensiveLibrariesToRun)
+            .column("library_name", "Library")
+            .column("total_cost", "Total Cost")
+            .toRun(this::tabulateReport)
+            .inMemory(args -> engine().top10MostExpensiveLibrariesToRun())
             .build();
         runners.put(runner.key(), runner);
 
         runner = QueryRunner.builder()
             .header("Staff count and staff pay per library")
             .body(SqlQuery.staff_count_and_staff_pay_per_library)
-            .toRun(this::staffCountAndStaffPayPerLibrary)
+            .column("library_name", "Library")
+            .column("librarians", "Librarians")
+            .column("employees", "Employees")
+            .column("total_staff", "Total Staff")
+            .column("salaries", "Salaries")
+            .column("benefits", "Benefits")
+            .column("total_employee_expenditures", "Total Employee Expenditures")
+            .toRun(this::tabulateReport)
+            .inMemory(args -> engine().staffCountAndStaffPayPerLibrary())
             .build();
         runners.put(runner.key(), runner);
 
@@ -624,59 +1218,246 @@ final class UsLibrariesAnalytics {
         runner = QueryRunner.builder()
             .header("Library count per county")
             .body(SqlQuery.library_count_per_county)
-            .toRun(this::librariesCountForEachCounty)
+            .column("county_name", "County")
+            .column("county_population", "County Population")
+            .column("state_alpha_code", "State Alpha Code")
+            .column("library_count", "Libraries")
+            .toRun(this::tabulateReport)
+            .inMemory(args -> engine().libraryCountPerCounty())
             .build();
         runners.put(runner.key(), runner);
         
         runner = QueryRunner.builder()
             .header("Database count per library")
             .body(SqlQuery.database_count_per_library)
-            .toRun(this::databasesCountForEachLibrary)
+            .column("library_name", "Library")
+            .column("local_cooperative_agreements", "Local Cooperative Agreements")
+            .column("state_licensed_databases", "State Licensed Databases")
+            .column("total_databases", "Total Databases")
+            .toRun(this::tabulateReport)
+            .inMemory(args -> engine().databaseCountPerLibrary())
             .build();
         runners.put(runner.key(), runner);
 
         runner = QueryRunner.builder()
             .header("Address of each library")
             .body(SqlQuery.addresses_of_each_library)
-            .toRun(this::addressForEachLibrary)
+            .column("library_name", "Library")
+            .column("street_address", "Street")
+            .column("city", "City")
+            .column("zipcode", "Zipcode")
+            .column("state_alpha_code", "State Alpha Code")
+            .column("county_name", "County")
+            .column("latitude", "Latitude")
+            .column("longitude", "Longitude")
+            .toRun(this::tabulateReport)
+            .inMemory(args -> engine().addressesOfEachLibrary())
             .build();
         runners.put(runner.key(), runner);
  
         runner = QueryRunner.builder()
             .header("Capital revenues of each library desc")
             .body(SqlQuery.capital_revenues_of_each_library_ordered_most_to_least)
-            .toRun(this::capitalRevenuesForEachLibraryDesc)
+            .column("library_name", "Library")
+            .column("local_government_capital_revenue", "Local Government Operating Revenue")
+            .column("state_government_capital_revenue", "State Government Operating Revenue")
+            .column("federal_government_capital_revenue", "Federal Government Operating Revenue")
+            .column("other_capital_revenue", "Other Capital Revenue")
+            .column("total_capital_revenue", "Federal Government Operating Revenue")
+            .toRun(this::tabulateReport)
+            .inMemory(args -> engine().capitalRevenuesOfEachLibraryOrderedMostToLeast())
             .build();
         runners.put(runner.key(), runner);
 
         runner = QueryRunner.builder()
             .header("Operating revenues of each library desc")
             .body(SqlQuery.operating_revenues_of_each_library_ordered_most_to_least)
-            .toRun(this::operatingRevenuesForEachLibraryDesc)
+            .column("library_name", "Library")
+            .column("local_government_operating_revenue", "Local Government Operating Revenue")
+            .column("state_government_operating_revenue", "State Government Operating Revenue")
+            .column("federal_government_operating_revenue", "Federal Government Operating Revenue")
+            .column("other_operating_revenue", "Other Capital Revenue")
+            .column("total_operating_revenue", "Federal Government Operating Revenue")
+            .toRun(this::tabulateReport)
+            .inMemory(args -> engine().operatingRevenuesOfEachLibraryOrderedMostToLeast())
             .build();
         runners.put(runner.key(), runner);
 
         runner = QueryRunner.builder()
             .header("Collection expenditures of each library desc")
             .body(SqlQuery.collection_expenditures_of_each_library_ordered_most_to_least)
-            .toRun(this::collectionExpendituresForEachLibraryDesc)
+            .column("library_name", "Library")
+            .column("print_collection_expenditures", "Print Collection Expenditures")
+            .column("digital_collection_expenditures", "Digital Collection Expenditures")
+            .column("other_collection_expenditures", "Other Collection Expenditures")
+            .column("total_collection_expenditures", "Total Collection Expenditures")
+            .toRun(this::tabulateReport)
+            .inMemory(args -> engine().collectionExpendituresOfEachLibraryOrderedMostToLeast())
             .build();
         runners.put(runner.key(), runner); 
+
+        runner = QueryRunner.builder()
+            .header("Libraries closest to a point")
+            .body(SqlQuery.libraries_with_coordinates)
+            .toRun(this::librariesClosestToPoint)
+            .inMemory(args -> engine().librariesWithCoordinates())
+            .args("latitude", "longitude", "k (closest libraries, default 10)", "radius in km (instead of k)")
+            .build();
+        runners.put(runner.key(), runner);
+    }
+
+    private static final int BENCHMARK_RUNS = 3;
+    private static final Pattern EXAMPLE_ARG = Pattern.compile("e\\.g\\.\\s*([^)\\s]+)");
+
+    // Times every report without and with the report indexes and checks
+    // that both return the same rows
+    public void benchmarkIndexes() {
+        if (pool == null) throw new RuntimeException("Failed to connect to database");
+
+        try {
+            try (Connection connection = pool.borrow()) {
+                ReportIndexes.drop(connection, null);
+            }
+            Map<Integer, ReportTiming> without = timeReports(false);
+            try (Connection connection = pool.borrow()) {
+                ReportIndexes.build(connection);
+            }
+            Map<Integer, ReportTiming> with = timeReports(false);
+
+            System.out.println(String.format("%-4s %12s %12s %8s  %s", "", "no indexes", "indexes", "rows", "results"));
+            for (int key : without.keySet()) {
+                ReportTiming before = without.get(key), after = with.get(key);
+                System.out.println(String.format("%-4d %9.1f ms %9.1f ms %8d  %s",
+                    key, before.millis, after.millis, after.rows, before.compare(after)));
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        } finally {
+            close();
+        }
     }
 
-    private String[][] toTableRecords(List<String[]> results) {
-        String[][] records = new String[results.size()][results.get(0).length];
-        for (int i = 0; i < records.length; i++) {
-            records[i] = results.get(i);
+    // Times every report on the database and on the in-memory engine and
+    // checks that both return the same rows
+    public void verifyInMemory() {
+        if (pool == null) throw new RuntimeException("Failed to connect to database");
+
+        try {
+            engine();
+            Map<Integer, ReportTiming> sql = timeReports(false);
+            Map<Integer, ReportTiming> memory = timeReports(true);
+
+            System.out.println(String.format("%-4s %12s %12s %8s  %s", "", "sql", "memory", "rows", "results"));
+            for (int key : sql.keySet()) {
+                ReportTiming database = sql.get(key), engine = memory.get(key);
+                System.out.println(String.format("%-4d %9.1f ms %9.1f ms %8d  %s",
+                    key, database.millis, engine.millis, engine.rows, database.compare(engine)));
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        } finally {
+            close();
+        }
+    }
+
+    private Map<Integer, ReportTiming> timeReports(boolean inMemory) throws SQLException {
+        Map<Integer, ReportTiming> timings = new TreeMap<>();
+        for (QueryRunner runner : runners.values()) {
+            if (runner.key() == DEFAULT_QUERY_RUNNER_KEY) continue;
+
+            ReportTiming best = null;
+            for (int run = 0; run < BENCHMARK_RUNS; run++) {
+                ReportTiming timing = timeReport(runner, inMemory);
+                if (best == null || timing.millis < best.millis) best = timing;
+            }
+            timings.put(runner.key(), best);
+        }
+        return timings;
+    }
+
+    // Fills the parameters, in order, from the examples in the runner's argument hints
+    private ReportTiming timeReport(QueryRunner runner, boolean inMemory) throws SQLException {
+        List<String> examples = new ArrayList<>();
+        for (String arg : runner.args) {
+            Matcher example = EXAMPLE_ARG.matcher(arg);
+            if (example.find()) examples.add(example.group(1));
+        }
+
+        long start = System.nanoTime();
+        List<String> rows = new ArrayList<>();
+        try (ReportRows resultSet = execute(runner.query, inMemory, examples.toArray(String[]::new))) {
+            int columns = resultSet.columns().length;
+            while (resultSet.next()) {
+                StringBuilder row = new StringBuilder();
+                for (int column = 1; column <= columns; column++) row.append(resultSet.getString(column)).append(Delimiter.TAB);
+                rows.add(row.toString());
+            }
+        }
+        return new ReportTiming((System.nanoTime() - start) / 1e6, rows);
+    }
+
+    private static final class ReportTiming {
+        final double millis;
+        final int rows;
+        final int orderedDigest, sortedDigest;
+
+        ReportTiming(double millis, List<String> rows) {
+            this.millis = millis;
+            this.rows = rows.size();
+            this.orderedDigest = rows.hashCode();
+            List<String> sorted = new ArrayList<>(rows);
+            Collections.sort(sorted);
+            this.sortedDigest = sorted.hashCode();
+        }
+
+        // Rows tied on the sort keys may come back in another order under another plan
+        String compare(ReportTiming other) {
+            if (orderedDigest == other.orderedDigest) return "identical";
+            if (sortedDigest == other.sortedDigest) return "same rows, ties ordered differently";
+            return "DIFFERENT";
+        }
+    }
+
+    private static final String[] NO_ARGS = {};
+
+    private void tabulateReport(Query query) {
+        if (applyCacheIfPresent(query.header)) return;
+        tabulateReportWithArgs(query, NO_ARGS);
+    }
+
+    // Every report defined by its columns is fetched and shown here: the
+    // table opens on the first page of the rows, read into typed buffers
+    // laid out from the rows' metadata. Results of reports without
+    // parameters that fit one page are cached
+    private void tabulateReportWithArgs(Query query, String[] args) {
+        ReportRows resultSet = null;
+        try {
+            boolean inMemory = query.offline;
+            resultSet = execute(query, inMemory, true, args);
+            PagedTableModel model = PagedTableModel.open(resultSet,
+                inMemory ? null : () -> execute(query, false, true, args), query.titles, query.labels);
+            resultSet = null;
+
+            if (model.getRowCount() == 0) displayNotFound();
+            else {
+                if (model.complete() && args.length == 0) cache.put(query.header, new CacheRecord(query.header, model));
+                tabulate(model, query.header);
+            }
+        } catch (SQLException e) {
+            try {
+                if (resultSet != null) resultSet.close();
+            } catch (SQLException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw new RuntimeException(e);
         }
-        return records;
     }
 
     private boolean applyCacheIfPresent(String key) {
         ensureCacheRefreshed();
         CacheRecord cached = cache.getOrDefault(key, null);
         boolean result = cached != null;
-        if (result) UI.tabulate(cached.records, cached.header, "Cached: " + cached.title);
+        if (result) tabulate(cached.records, "Cached: " + cached.title);
         return result;
     }
 
@@ -696,32 +1477,37 @@ final class UsLibrariesAnalytics {
             System.out.println(runners.get(i));
         }
 
+        if (pool != null) System.out.println("s - Statement cache hits and connection pool");
+        for (ReportExecutor.Task task : executor.running()) {
+            System.out.println(String.format("c %d - Cancel %s (running for %.1f s)", task.key, task.title, task.millis() / 1000));
+        }
         System.out.println("q - End\n");
         System.out.println("Please make a selection");
     }
 
     private void displayNotFound() {
-        JOptionPane.showMessageDialog(null, "- - - No records are found - - -");
+        SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(null, "- - - No records are found - - -"));
         System.out.println("\n\n - - - No records are found - - -\n\n");
     }
 
-    private final static class Library {
-        final String name;
-        final double totalOperatingRevenue;
+    // Shows the rows on the event dispatch thread, unless the report was cancelled meanwhile
+    private void tabulate(String[][] records, String[] header, String title) {
+        ReportExecutor.Task task = ReportExecutor.current();
+        if (task != null && task.cancelled()) return;
+        SwingUtilities.invokeLater(() -> UI.tabulate(records, header, title));
+    }
 
-        public Library(String name, double totalOperatingRevenue) {
-            this.name = name;
-            this.totalOperatingRevenue = totalOperatingRevenue;
-        }
+    private void tabulate(PagedTableModel model, String title) {
+        ReportExecutor.Task task = ReportExecutor.current();
+        if (task != null && task.cancelled()) model.close();
+        else SwingUtilities.invokeLater(() -> UI.tabulate(model, title));
     }
 
-    private boolean isDbSeeded(Connection connection) {
+    private boolean isDbSeeded() {
         boolean result = false;
 
-        try {
-            ResultSet resultSet = connection
-                .getMetaData()
-                .getTables(null, null, "libraries", null);
+        try (Connection connection = pool.borrow();
+            ResultSet resultSet = connection.getMetaData().getTables(null, null, "libraries", null)) {
             result = resultSet.next();
         } catch (SQLException e) {
             e.printStackTrace();
@@ -730,967 +1516,5335 @@ final class UsLibrariesAnalytics {
         return result;
     }
 
+    // Each n is a value, answered with its k closest libraries, or a low..high range, answered with every library in it
     private void librariesOrderedByTotalOperatingRevenue(Query query, String[] args) {
-        if (!Arithmetic.isDouble(args[0])) {
+        String[] ns = args[0].trim().split("\\s*,\\s*");
+        String k = args.length > 1 ? args[1].trim() : "";
+        for (String n : ns) {
+            // A finite value, or a single ".." between finite bounds, the low one first
+            String[] range = n.split("\\.\\.", -1);
+            boolean numerical = range.length <= 2 && n.indexOf("..") == n.lastIndexOf("..");
+            for (String bound : range) numerical &= Arithmetic.isFinite(bound);
+            numerical = numerical && (range.length == 1 || Double.parseDouble(range[0]) <= Double.parseDouble(range[1]));
+            if (!numerical || !k.isEmpty() && !(Arithmetic.isInteger(k) && Integer.parseInt(k) > 0)) {
+                System.out.println("\n--- The input must be numerical ---");
+                return;
+            }
+        }
+
+        RevenueIndex index = revenueIndex(query);
+        long start = System.nanoTime();
+        int closest = k.isEmpty() ? 1 : Integer.parseInt(k);
+
+        // The single values are answered in one batch, the ranges one by one
+        double[] values = new double[ns.length];
+        int count = 0;
+        for (String n : ns) {
+            if (!n.contains("..")) values[count++] = Double.parseDouble(n);
+        }
+        int[][] nearest = index.nearest(Arrays.copyOf(values, count), closest);
+
+        List<String[]> records = new ArrayList<>();
+        int value = 0;
+        for (String n : ns) {
+            String[] range = n.split("\\.\\.");
+            int[] positions;
+            if (range.length == 2) {
+                int[] bounds = index.range(Double.parseDouble(range[0]), Double.parseDouble(range[1]));
+                positions = new int[bounds[1] - bounds[0]];
+                for (int i = 0; i < positions.length; i++) positions[i] = bounds[0] + i;
+            } else {
+                positions = nearest[value++];
+            }
+
+            for (int position : positions) {
+                records.add(new String[] { n, index.name(position), ResultColumns.format(index.total(position)) });
+            }
+        }
+        System.out.println(String.format("Looked up %d values among %d libraries in %.0f us",
+            ns.length, index.size(), (System.nanoTime() - start) / 1e3));
+
+        if (records.isEmpty()) displayNotFound();
+        else tabulate(records.toArray(String[][]::new), new String[] { "n", "Library", "Total Operating Revenue" }, query.header);
+    }
+
+    // Answers with the k libraries closest to the point, or with every library within the radius, closest first
+    private void librariesClosestToPoint(Query query, String[] args) {
+        String latitude = args[0].trim(), longitude = args[1].trim(), k = args[2].trim(), radius = args[3].trim();
+        if (!Arithmetic.isFinite(latitude) || !Arithmetic.isFinite(longitude)
+            || !k.isEmpty() && !(Arithmetic.isInteger(k) && Integer.parseInt(k) > 0)
+            || !radius.isEmpty() && !(Arithmetic.isFinite(radius) && Double.parseDouble(radius) >= 0)) {
             System.out.println("\n--- The input must be numerical ---");
             return;
         }
 
-        try {
-            PreparedStatement statement = connection.prepareStatement(query.body);
-            ResultSet resultSet = statement.executeQuery();
-            List<Library> libraries = new ArrayList<>();
-            while (resultSet.next()) {
-                libraries.add(
-                    new Library(
-                        resultSet.getString("library_name"), 
-                        resultSet.getDouble("total_operating_revenue")
-                    )
-                );
-            }
-
-            double n = Double.parseDouble(args[0]); // user-defined n
-            int i = 0, j = libraries.size() - 1;
-            while (i < j - 1) {
-                int k = i + (j - i) / 2;
-                if (libraries.get(k).totalOperatingRevenue < n) i = k;
-                else j = k;
-            }
-
-            // Search for the value closes to n
-            Library library = null, left = libraries.get(i), right = libraries.get(j);
-            if (n < left.totalOperatingRevenue) library = left;
-            else if (n > right.totalOperatingRevenue) library = right;
-            else {
-                library = n - left.totalOperatingRevenue < right.totalOperatingRevenue - n
-                    ? left
-                    : right;
+        GeoIndex index = geoIndex(query);
+        long start = System.nanoTime();
+        double pointLatitude = Double.parseDouble(latitude), pointLongitude = Double.parseDouble(longitude);
+        int[] ids = radius.isEmpty()
+            ? index.nearest(pointLatitude, pointLongitude, k.isEmpty() ? 10 : Integer.parseInt(k))
+            : index.within(pointLatitude, pointLongitude, Double.parseDouble(radius));
+        System.out.println(String.format("Looked up %d of %d libraries in %.0f us", ids.length, index.size(), (System.nanoTime() - start) / 1e3));
+
+        String[][] records = new String[ids.length][];
+        for (int i = 0; i < ids.length; i++) {
+            String[] values = index.values(ids[i]);
+            records[i] = Arrays.copyOf(values, values.length + 3);
+            records[i][values.length] = ResultColumns.format(index.latitude(ids[i]));
+            records[i][values.length + 1] = ResultColumns.format(index.longitude(ids[i]));
+            records[i][values.length + 2] = String.format("%.1f", index.distance(ids[i], pointLatitude, pointLongitude));
+        }
+
+        if (records.length == 0) displayNotFound();
+        else tabulate(records, new String[] { "Library", "City", "State Alpha Code", "Latitude", "Longitude", "Distance (km)" }, query.header);
+    }
+
+    // Built on first use from whichever backend runs the report, and again once the tables are reloaded
+    private synchronized GeoIndex geoIndex(Query query) {
+        if (geoIndex == null || geoIndex.stale() || geoIndexOffline != query.offline) {
+            long start = System.nanoTime();
+            try (ReportRows rows = execute(query)) {
+                geoIndex = GeoIndex.build(rows, "latitude", "longitude", "library_name", "city", "state_alpha_code");
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
             }
+            geoIndexOffline = query.offline;
+            System.out.println(String.format("Indexed the coordinates of %d libraries in %.1f ms", geoIndex.size(), (System.nanoTime() - start) / 1e6));
+        }
+        return geoIndex;
+    }
 
-            String[][] record = {{ library.name, String.valueOf(library.totalOperatingRevenue), String.valueOf(n) }};
-            String[] header = { "Library", "Total Operating Revenue", "n"};
-            UI.tabulate(record, header, query.header);
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
+    // Built on first use from whichever backend runs the report, and again once the tables are reloaded
+    private synchronized RevenueIndex revenueIndex(Query query) {
+        if (revenueIndex == null || revenueIndex.stale() || revenueIndexOffline != query.offline) {
+            long start = System.nanoTime();
+            try (ReportRows rows = execute(query)) {
+                revenueIndex = RevenueIndex.build(rows, "library_name", "total_operating_revenue");
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+            revenueIndexOffline = query.offline;
+            System.out.println(String.format("Indexed the totals of %d libraries in %.1f ms", revenueIndex.size(), (System.nanoTime() - start) / 1e6));
+        }
+        return revenueIndex;
+    }
+}
+
+final class Arithmetic {
+
+    public static boolean isInteger(String value) {
+        try {
+            Integer.parseInt(value);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
         }
     }
 
-    private void LibrariesWithIdOfId1OrId2(Query query, String[] args) {
+    public static boolean isDouble(String value) {
         try {
-            PreparedStatement statement = connection.prepareStatement(query.body);
-            statement.setString(1, args[0]);
-            statement.setString(2, args[1]);
-            ResultSet resultSet = statement.executeQuery();
-            List<String[]> results = new ArrayList<>();
-            while (resultSet.next()) {
-                String[] result = {
-                    resultSet.getString("library_id"),
-                    resultSet.getString("library_name"),
-                } ;
-                results.add(result);
-            }
-            
-            if (results.isEmpty()) displayNotFound();
-            else {              
-                String[][] records = toTableRecords(results);
-                String[] header = { "Library ID", "Library" };
-                UI.tabulate(records, header, query.header);
-            }
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
+            Double.parseDouble(value);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
         }
     }
 
-    private void averageStateLicensedDatabasesPerLibraryForCountiesThatBelongToStatesWithLessThan5Counties(Query query) {
+    // A number other than NaN or an infinity
+    public static boolean isFinite(String value) {
+        return isDouble(value) && Double.isFinite(Double.parseDouble(value));
+    }
+}
+
+// Rows of a report read by column label, from the database or from the in-memory engine
+interface ReportRows extends AutoCloseable {
 
-        if (applyCacheIfPresent(query.header)) return;
+    // Labels of the columns in select order
+    String[] columns() throws SQLException;
+
+    // Buffers the columns' values fit, in select order
+    ResultColumns.Kind[] kinds() throws SQLException;
+
+    boolean next() throws SQLException;
+
+    // Number of rows, for rows that can be positioned
+    int size() throws SQLException;
+
+    // Positions the rows so next() reads the row at the 0-based index
+    void seek(int row) throws SQLException;
+
+    String getString(String column) throws SQLException;
+
+    int getInt(String column) throws SQLException;
+
+    long getLong(String column) throws SQLException;
+
+    double getDouble(String column) throws SQLException;
+
+    BigDecimal getBigDecimal(String column) throws SQLException;
+
+    // Columns by position, from 1 like a ResultSet
+    String getString(int position) throws SQLException;
+
+    int getInt(int position) throws SQLException;
+
+    long getLong(int position) throws SQLException;
+
+    double getDouble(int position) throws SQLException;
+
+    BigDecimal getBigDecimal(int position) throws SQLException;
+
+    // Whether the value read last was null
+    boolean wasNull() throws SQLException;
+
+    @Override
+    void close() throws SQLException;
+}
+
+// Closing the rows closes the result set and hands the statement back.
+// Only a scrollable result set can be sized and positioned
+final class JdbcReportRows implements ReportRows {
+
+    @FunctionalInterface
+    interface Release {
+        void run() throws SQLException;
+    }
+
+    private final ResultSet resultSet;
+    private final Release release;
+
+    public JdbcReportRows(ResultSet resultSet, Release release) {
+        this.resultSet = resultSet;
+        this.release = release;
+    }
+
+    @Override
+    public String[] columns() throws SQLException {
+        ResultSetMetaData metadata = resultSet.getMetaData();
+        String[] columns = new String[metadata.getColumnCount()];
+        for (int i = 0; i < columns.length; i++) columns[i] = metadata.getColumnLabel(i + 1);
+        return columns;
+    }
+
+    @Override
+    public ResultColumns.Kind[] kinds() throws SQLException {
+        ResultSetMetaData metadata = resultSet.getMetaData();
+        ResultColumns.Kind[] kinds = new ResultColumns.Kind[metadata.getColumnCount()];
+        for (int i = 0; i < kinds.length; i++) kinds[i] = ResultColumns.kind(metadata.getColumnType(i + 1), metadata.getScale(i + 1));
+        return kinds;
+    }
+
+    @Override
+    public boolean next() throws SQLException {
+        return resultSet.next();
+    }
+
+    @Override
+    public int size() throws SQLException {
+        int position = resultSet.getRow();
+        int size = resultSet.last() ? resultSet.getRow() : 0;
+        seek(position);
+        return size;
+    }
+
+    @Override
+    public void seek(int row) throws SQLException {
+        if (row == 0) resultSet.beforeFirst();
+        else resultSet.absolute(row);
+    }
+
+    @Override
+    public String getString(String column) throws SQLException {
+        return resultSet.getString(column);
+    }
+
+    @Override
+    public int getInt(String column) throws SQLException {
+        return resultSet.getInt(column);
+    }
+
+    @Override
+    public long getLong(String column) throws SQLException {
+        return resultSet.getLong(column);
+    }
+
+    @Override
+    public double getDouble(String column) throws SQLException {
+        return resultSet.getDouble(column);
+    }
+
+    @Override
+    public BigDecimal getBigDecimal(String column) throws SQLException {
+        return resultSet.getBigDecimal(column);
+    }
+
+    @Override
+    public String getString(int position) throws SQLException {
+        return resultSet.getString(position);
+    }
+
+    @Override
+    public int getInt(int position) throws SQLException {
+        return resultSet.getInt(position);
+    }
+
+    @Override
+    public long getLong(int position) throws SQLException {
+        return resultSet.getLong(position);
+    }
+
+    @Override
+    public double getDouble(int position) throws SQLException {
+        return resultSet.getDouble(position);
+    }
+
+    @Override
+    public BigDecimal getBigDecimal(int position) throws SQLException {
+        return resultSet.getBigDecimal(position);
+    }
+
+    @Override
+    public boolean wasNull() throws SQLException {
+        return resultSet.wasNull();
+    }
 
+    @Override
+    public void close() throws SQLException {
         try {
-            PreparedStatement statement = connection.prepareStatement(query.body);
-            ResultSet resultSet = statement.executeQuery();
-            List<String[]> results = new ArrayList<>();
-            while (resultSet.next()) {
-                String[] result = {
-                    String.valueOf(resultSet.getInt("county_code")),
-                    String.valueOf(resultSet.getInt("state_code")),
-                    String.valueOf(resultSet.getInt("average_state_licensed_databases_per_library_for_county"))
-                };
-                results.add(result);
-            }
+            resultSet.close();
+        } finally {
+            release.run();
+        }
+    }
+}
 
-            if (results.isEmpty()) displayNotFound();
-            else {
-                String[][] records = toTableRecords(results);
-                String[] header = { "County Code", "State Code", "Average State Licensed Databases per Library for County" };
-                UI.tabulate(records, header, query.header);
-                cache.put(query.header, new CacheRecord(query.header, header, records));
+// Rows of a report held a column at a time in typed buffers: integers in
+// int arrays, numeric(18,0) values in long arrays, floats in double
+// arrays, wider numerics as BigDecimal and strings as codes into a
+// dictionary of the column's distinct values. Nothing is turned into text
+// until a cell is shown. Which buffer a column fills follows from the
+// rows' metadata, resolved once per result into a Layout
+final class ResultColumns {
+
+    enum Kind { STRING, INT, LONG, DOUBLE, DECIMAL }
+
+    // Position and kind of every shown column of one result
+    static final class Layout {
+        final int[] positions;
+        final Kind[] kinds;
+
+        private Layout(int[] positions, Kind[] kinds) {
+            this.positions = positions;
+            this.kinds = kinds;
+        }
+    }
+
+    // Finds the labelled columns among the rows' columns
+    public static Layout layout(ReportRows rows, String... labels) throws SQLException {
+        String[] columns = rows.columns();
+        Kind[] available = rows.kinds();
+        int[] positions = new int[labels.length];
+        Kind[] kinds = new Kind[labels.length];
+
+        for (int i = 0; i < labels.length; i++) {
+            int position = 0;
+            while (position < columns.length && !columns[position].equalsIgnoreCase(labels[i])) position++;
+            if (position == columns.length) throw new SQLException("The report has no column " + labels[i]);
+            positions[i] = position + 1;
+            kinds[i] = available[position];
+        }
+        return new Layout(positions, kinds);
+    }
+
+    // Buffer of a column of the SQL type. Whole numerics fit a long, the
+    // reports' sums of numeric(18,0) columns stay far below its range
+    public static Kind kind(int sqlType, int scale) {
+        switch (sqlType) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+                return Kind.INT;
+            case Types.BIGINT:
+                return Kind.LONG;
+            case Types.NUMERIC:
+            case Types.DECIMAL:
+                return scale == 0 ? Kind.LONG : Kind.DECIMAL;
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return Kind.DOUBLE;
+            default:
+                return Kind.STRING;
+        }
+    }
+
+    private final int[] positions;
+    private final Column[] columns;
+    private int size;
+
+    public ResultColumns(Layout layout, int capacity) {
+        this.positions = layout.positions;
+        this.columns = new Column[positions.length];
+        for (int i = 0; i < columns.length; i++) columns[i] = Column.of(layout.kinds[i], capacity);
+    }
+
+    // Appends the row the rows are on
+    public void add(ReportRows rows) throws SQLException {
+        for (int i = 0; i < columns.length; i++) columns[i].read(rows, positions[i], size);
+        size++;
+    }
+
+    // Drops what was only needed while adding rows
+    public void seal() {
+        for (Column column : columns) column.seal();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Boxed value of a cell, null for SQL null
+    public Object value(int row, int column) {
+        return columns[column].value(row);
+    }
+
+    // Integers as they are, fractions in plain notation without trailing zeros
+    public static String format(Object value) {
+        if (value == null) return "";
+        if (value instanceof BigDecimal) return ((BigDecimal) value).stripTrailingZeros().toPlainString();
+        if (value instanceof Double) return format(BigDecimal.valueOf((Double) value));
+        return value.toString();
+    }
+
+    private abstract static class Column {
+        BitSet nulls;
+
+        static Column of(Kind kind, int capacity) {
+            switch (kind) {
+                case INT: return new IntColumn(capacity);
+                case LONG: return new LongColumn(capacity);
+                case DOUBLE: return new DoubleColumn(capacity);
+                case DECIMAL: return new DecimalColumn(capacity);
+                default: return new StringColumn(capacity);
             }
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
+        }
+
+        abstract void read(ReportRows rows, int position, int row) throws SQLException;
+
+        abstract Object value(int row);
+
+        void seal() {
+        }
+
+        void nullAt(ReportRows rows, int row) throws SQLException {
+            if (!rows.wasNull()) return;
+            if (nulls == null) nulls = new BitSet();
+            nulls.set(row);
+        }
+
+        boolean isNull(int row) {
+            return nulls != null && nulls.get(row);
         }
     }
 
-    private void top10CountiesOrderedByLibrariesCountThenBySchoolsCount(Query query) {
+    private static final class IntColumn extends Column {
+        final int[] values;
 
-        if (applyCacheIfPresent(query.header)) return;
+        IntColumn(int capacity) {
+            values = new int[capacity];
+        }
 
-        try {
-            PreparedStatement statement = connection.prepareStatement(query.body);
-            ResultSet resultSet = statement.executeQuery();
-            List<String[]> results = new ArrayList<>();
-            while (resultSet.next()) {
-                String[] result = {
-                    String.valueOf(resultSet.getInt("county_code")),
-                    String.valueOf(resultSet.getInt("state_code")),
-                    String.valueOf(resultSet.getInt("libraries_count")),
-                    String.valueOf(resultSet.getInt("schools_count")),
-                };
-                results.add(result);
+        void read(ReportRows rows, int position, int row) throws SQLException {
+            values[row] = rows.getInt(position);
+            nullAt(rows, row);
+        }
+
+        Object value(int row) {
+            return isNull(row) ? null : (Object) values[row];
+        }
+    }
+
+    private static final class LongColumn extends Column {
+        final long[] values;
+
+        LongColumn(int capacity) {
+            values = new long[capacity];
+        }
+
+        void read(ReportRows rows, int position, int row) throws SQLException {
+            values[row] = rows.getLong(position);
+            nullAt(rows, row);
+        }
+
+        Object value(int row) {
+            return isNull(row) ? null : (Object) values[row];
+        }
+    }
+
+    private static final class DoubleColumn extends Column {
+        final double[] values;
+
+        DoubleColumn(int capacity) {
+            values = new double[capacity];
+        }
+
+        void read(ReportRows rows, int position, int row) throws SQLException {
+            values[row] = rows.getDouble(position);
+            nullAt(rows, row);
+        }
+
+        Object value(int row) {
+            return isNull(row) ? null : (Object) values[row];
+        }
+    }
+
+    private static final class DecimalColumn extends Column {
+        final BigDecimal[] values;
+
+        DecimalColumn(int capacity) {
+            values = new BigDecimal[capacity];
+        }
+
+        void read(ReportRows rows, int position, int row) throws SQLException {
+            values[row] = rows.getBigDecimal(position);
+        }
+
+        Object value(int row) {
+            return values[row];
+        }
+    }
+
+    // A value repeated down the column is held once
+    private static final class StringColumn extends Column {
+        final int[] codes;
+        final ArrayList<String> values = new ArrayList<>();
+        Map<String, Integer> dictionary = new HashMap<>();
+
+        StringColumn(int capacity) {
+            codes = new int[capacity];
+        }
+
+        void read(ReportRows rows, int position, int row) throws SQLException {
+            String value = rows.getString(position);
+            if (value == null) {
+                codes[row] = -1;
+                return;
             }
 
-            if (results.isEmpty()) displayNotFound();
-            else {
-                String[][] records = toTableRecords(results);
-                String[] header = { "County Code", "State Code", "Libraries", "Schools" };
-                UI.tabulate(records, header, query.header);
-                cache.put(query.header, new CacheRecord(query.header, header, records));
+            Integer code = dictionary.get(value);
+            if (code == null) {
+                code = values.size();
+                values.add(value);
+                dictionary.put(value, code);
             }
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
+            codes[row] = code;
+        }
+
+        Object value(int row) {
+            return codes[row] < 0 ? null : values.get(codes[row]);
+        }
+
+        @Override
+        void seal() {
+            dictionary = null;
+            values.trimToSize();
         }
     }
+}
 
-    private void librariesCountForEachCounty(Query query) {
+// Prepared statements of one connection, each prepared on its first use
+// and reused by the later runs of the same query, so the server parses and
+// plans it once. A statement serves one run at a time: it comes back with
+// its result set closed and its parameters cleared, and a run that fails
+// closes it instead. Counts hits and prepares per query
+final class StatementCache implements AutoCloseable {
 
-        if (applyCacheIfPresent(query.header)) return;
+    private final Connection connection;
+    private final Map<String, Deque<PreparedStatement>> idle = new HashMap<>();
+    private final Map<String, Deque<PreparedStatement>> idleScrollable = new HashMap<>();
+    private final Map<String, long[]> counts = new HashMap<>(); // sql -> hits, prepares
+    private final List<PreparedStatement> prepared = new ArrayList<>();
+
+    public StatementCache(Connection connection) {
+        this.connection = connection;
+    }
+
+    public PreparedStatement borrow(String sql) throws SQLException {
+        return borrow(sql, false);
+    }
+
+    // A scrollable statement opens a read-only cursor the rows can be positioned in,
+    // cached apart from the forward-only statement of the same query
+    public synchronized PreparedStatement borrow(String sql, boolean scrollable) throws SQLException {
+        long[] count = counts.computeIfAbsent(sql, key -> new long[2]);
+        Deque<PreparedStatement> statements = (scrollable ? idleScrollable : idle).get(sql);
+        PreparedStatement statement = statements == null ? null : statements.poll();
+        if (statement != null) {
+            count[0]++;
+            return statement;
+        }
+
+        statement = scrollable
+            ? connection.prepareStatement(sql, ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY)
+            : connection.prepareStatement(sql);
+        prepared.add(statement);
+        count[1]++;
+        return statement;
+    }
 
+    public synchronized void release(String sql, PreparedStatement statement) throws SQLException {
+        boolean scrollable;
         try {
-            PreparedStatement statement = connection.prepareStatement(query.body);
-            ResultSet resultSet = statement.executeQuery();
-            List<String[]> results = new ArrayList<>();
-            while (resultSet.next()) {
-                String[] result = {
-                    resultSet.getString("county_name"),
-                    resultSet.getString("county_population"),
-                    resultSet.getString("state_alpha_code"),
-                    String.valueOf(resultSet.getInt("library_count"))
-                };
-                results.add(result);
-            }
+            statement.clearParameters();
+            scrollable = statement.getResultSetType() != ResultSet.TYPE_FORWARD_ONLY;
+        } catch (SQLException e) {
+            discard(statement);
+            throw e;
+        }
+        (scrollable ? idleScrollable : idle).computeIfAbsent(sql, key -> new ArrayDeque<>()).push(statement);
+    }
 
-            if (results.isEmpty()) displayNotFound();
-            else {
-                System.out.println("County name | County population | State alpha code | Library count |");
-                String[][] records = toTableRecords(results);
-                String[] header = { "County", "County Population", "State Alpha Code", "Libraries" };
-                UI.tabulate(records, header, query.header);
-                cache.put(query.header, new CacheRecord(query.header, header, records));
+    public synchronized void discard(PreparedStatement statement) {
+        prepared.remove(statement);
+        try {
+            statement.close();
+        } catch (SQLException e) { }
+    }
+
+    public synchronized long hits(String sql) {
+        return counts.getOrDefault(sql, new long[2])[0];
+    }
+
+    public synchronized long prepares(String sql) {
+        return counts.getOrDefault(sql, new long[2])[1];
+    }
+
+    public synchronized long hits() {
+        return counts.values().stream().mapToLong(count -> count[0]).sum();
+    }
+
+    public synchronized long prepares() {
+        return counts.values().stream().mapToLong(count -> count[1]).sum();
+    }
+
+    @Override
+    public synchronized void close() throws SQLException {
+        SQLException failure = null;
+        for (PreparedStatement statement : prepared) {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                failure = e;
             }
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
         }
+        prepared.clear();
+        idle.clear();
+        idleScrollable.clear();
+        if (failure != null) throw failure;
     }
+}
+
+// Runs reports off the console and the event dispatch thread, on virtual
+// threads where the runtime has them and on daemon threads otherwise. A
+// report runs as a Task: the statement it is executing is attached to it,
+// so cancelling the task cancels the statement on the server. The report
+// reads its task through current() on the thread running it
+final class ReportExecutor implements AutoCloseable {
+
+    private static final ThreadLocal<Task> CURRENT = new ThreadLocal<>();
+
+    private final ExecutorService threads = threads();
+    private final Set<Task> running = ConcurrentHashMap.newKeySet();
+
+    // One run of a report
+    static final class Task {
+        final int key;
+        final String title;
+        final int timeoutSeconds;
+        final long started = System.nanoTime();
+
+        private CompletableFuture<Void> future;
+        private Statement statement;
+        private boolean cancelled;
+        private volatile long finished;
+
+        Task(int key, String title, int timeoutSeconds) {
+            this.key = key;
+            this.title = title;
+            this.timeoutSeconds = timeoutSeconds;
+        }
+
+        public CompletableFuture<Void> future() {
+            return future;
+        }
+
+        public synchronized boolean cancelled() {
+            return cancelled;
+        }
+
+        // Fails once the task is cancelled, so a cancelled report stops before its next query
+        public synchronized void attach(Statement statement) throws SQLException {
+            checkCancelled();
+            this.statement = statement;
+        }
+
+        public synchronized void detach(Statement statement) {
+            if (this.statement == statement) this.statement = null;
+        }
+
+        public synchronized void checkCancelled() throws SQLException {
+            if (cancelled) throw new SQLException("The report was cancelled", "HY008");
+        }
+
+        public synchronized void cancel() {
+            cancelled = true;
+            if (statement == null) return;
+            try {
+                statement.cancel();
+            } catch (SQLException e) {
+                // The statement finished or its connection is gone, either way it no longer runs
+            }
+        }
+
+        // Run time so far, or in total once the report completed
+        double millis() {
+            long end = finished;
+            return ((end != 0 ? end : System.nanoTime()) - started) / 1e6;
+        }
+
+        String outcome(Throwable error) {
+            String report = "Report " + key + " (" + title + ")";
+            if (cancelled()) return report + " cancelled after " + String.format("%.1f ms", millis());
+            if (error == null) return report + " finished in " + String.format("%.1f ms", millis());
+
+            for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+                if (cause instanceof SQLTimeoutException) return report + " timed out after " + timeoutSeconds + " s";
+            }
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (cause instanceof RuntimeException && cause.getCause() != null) cause = cause.getCause();
+            return report + " failed: " + cause.getMessage();
+        }
+    }
+
+    // Virtual threads came with Java 21, looked up so the app still runs on 11
+    private static ExecutorService threads() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "report");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    // Task of the report running on this thread, null outside of one
+    public static Task current() {
+        return CURRENT.get();
+    }
+
+    // The future completes after the outcome of the report is printed
+    public Task submit(int key, String title, int timeoutSeconds, Runnable report) {
+        Task task = new Task(key, title, timeoutSeconds);
+        running.add(task);
+        task.future = CompletableFuture
+            .runAsync(() -> {
+                CURRENT.set(task);
+                try {
+                    report.run();
+                } finally {
+                    CURRENT.remove();
+                }
+            }, threads)
+            .whenComplete((done, error) -> {
+                task.finished = System.nanoTime();
+                running.remove(task);
+                System.out.println(task.outcome(error));
+            });
+        return task;
+    }
+
+    // Running tasks in the order they started
+    public List<Task> running() {
+        List<Task> tasks = new ArrayList<>(running);
+        tasks.sort(Comparator.comparingLong(task -> task.started));
+        return tasks;
+    }
+
+    // Cancels the running reports with the key, or all of them for a negative key
+    public int cancel(int key) {
+        int cancelled = 0;
+        for (Task task : running) {
+            if (key >= 0 && task.key != key) continue;
+            task.cancel();
+            cancelled++;
+        }
+        return cancelled;
+    }
+
+    @Override
+    public void close() {
+        cancel(-1);
+        threads.shutdown();
+    }
+}
+
+// In-memory analytics
+// Answers the reports from the data files without a database. Each table is
+// held column by column: numbers in primitive arrays, strings as codes into
+// a dictionary, and every library keeps the row it references in each
+// table. Values follow the SQL types they would load into: numeric columns
+// round to whole numbers, integer sums and divisions stay integers, and
+// string comparisons ignore case and trailing spaces like the collation.
+// Rows tied on a report's sort keys keep their source order, where the
+// database's order among them depends on its plan
+final class ReportEngine {
+
+    private static final String SCHOOLS_FILE = "schools.txt";
+
+    // Scale of a numeric(19,0) divided by a numeric(19,0) in SQL Server
+    private static final int AVERAGE_SCALE = 19;
+    private static final int TOP = 10;
+
+    private final ColumnTable states, counties, schools, libraries;
+    private final ColumnTable staff, operating, employee, collection, capital, databases;
+
+    // Per library, the row it references in each table, -1 when there is none
+    private final int[] stateOf, countyOf, staffOf, operatingOf, employeeOf, collectionOf, capitalOf, databasesOf;
+
+    // Per county and per school, the row of its state
+    private final int[] countyStateOf, schoolStateOf;
+
+    // Per row of the metric tables, the sum of its columns
+    private final long[] operatingTotal, capitalTotal, collectionTotal, staffTotal, employeeTotal, databasesTotal;
+
+    private ReportEngine(Map<String, ColumnTable> tables) {
+        states = tables.get(Table.T_STATES);
+        counties = tables.get(Table.T_COUNTIES);
+        schools = tables.get(Table.T_SCHOOLS);
+        libraries = tables.get(Table.T_LIBRARIES);
+        staff = tables.get(Table.T_STAFF_MEMBERS_COUNTS);
+        operating = tables.get(Table.T_OPERATING_REVENUES);
+        employee = tables.get(Table.T_EMPLOYEE_EXPENDITURES);
+        collection = tables.get(Table.T_COLLECTION_EXPENDITURES);
+        capital = tables.get(Table.T_CAPITAL_REVENUES);
+        databases = tables.get(Table.T_DATABASES_COUNTS);
+
+        KeyIndex stateRows = KeyIndex.of(states.longs("state_code"), states.rows());
+        KeyIndex countyRows = KeyIndex.of(countyKeys(counties), counties.rows());
+
+        stateOf = stateRows.rows(libraries.longs("state_code"), libraries.rows());
+        countyOf = countyRows.rows(countyKeys(libraries), libraries.rows());
+        staffOf = references(staff, "staff_members_count_id");
+        operatingOf = references(operating, "operating_revenue_id");
+        employeeOf = references(employee, "employee_expenditure_id");
+        collectionOf = references(collection, "collection_expenditure_id");
+        capitalOf = references(capital, "capital_revenue_id");
+        databasesOf = references(databases, "databases_count_id");
+
+        countyStateOf = stateRows.rows(counties.longs("state_code"), counties.rows());
+        schoolStateOf = stateRows.rows(schools.longs("state_code"), schools.rows());
+
+        operatingTotal = operating.sum("local_government_operating_revenue", "state_government_operating_revenue", "federal_government_operating_revenue", "other_operating_revenue");
+        capitalTotal = capital.sum("local_government_capital_revenue", "state_government_capital_revenue", "federal_government_capital_revenue", "other_capital_revenue");
+        collectionTotal = collection.sum("print_collection_expenditures", "digital_collection_expenditures", "other_collection_expenditures");
+        staffTotal = staff.sum("librarians", "employees");
+        employeeTotal = employee.sum("salaries", "benefits");
+        databasesTotal = databases.sum("local_cooperative_agreements", "state_licensed_databases");
+    }
+
+    // Reads the data files of every table from dir, the way they are seeded
+    public static ReportEngine load(String dir) throws IOException {
+        return new ReportEngine(tables(dir));
+    }
+
+    // Maps the snapshot when it was written from these same data files.
+    // Otherwise parses them and writes the snapshot for the next start
+    public static ReportEngine open(String dir, String snapshot) throws IOException {
+        if (snapshot.isEmpty()) return load(dir);
+        List<String> files = sources(dir);
+        if (ColumnSnapshot.isFresh(snapshot, files)) return new ReportEngine(ColumnSnapshot.open(snapshot));
+
+        // Fingerprinted before parsing, so a file changed meanwhile leaves the snapshot stale
+        List<ColumnSnapshot.Source> sources = ColumnSnapshot.Source.of(files);
+        Map<String, ColumnTable> tables = tables(dir);
+        ColumnSnapshot.write(tables.values(), snapshot, sources);
+        return new ReportEngine(tables);
+    }
+
+    private static Map<String, ColumnTable> tables(String dir) throws IOException {
+        Map<String, ColumnTable> tables = new HashMap<>();
+        for (TableMapping mapping : TableMappings.ALL) {
+            tables.put(mapping.table, ColumnTable.load(mapping, source(dir, mapping.file)));
+        }
+        tables.put(Table.T_SCHOOLS, ColumnTable.loadSchools(source(dir, SCHOOLS_FILE)));
+        return tables;
+    }
+
+    // Files the tables are read from, schools' state names included
+    private static List<String> sources(String dir) {
+        List<String> sources = new ArrayList<>();
+        for (TableMapping mapping : TableMappings.ALL) sources.add(source(dir, mapping.file));
+        sources.add(source(dir, SCHOOLS_FILE));
+        sources.add(SourceTokenizer.resolve(StateCodes.STATE_NAMES_FILE));
+        sources.add(SourceTokenizer.resolve(StateCodes.STATES_FILE));
+        return sources;
+    }
+
+    // The file in dir, or in the working directory when dir lacks it, like states.txt next to generated data
+    private static String source(String dir, String file) {
+        String source = SourceTokenizer.resolve(Paths.get(dir, file).toString());
+        return Files.exists(Paths.get(source)) ? source : SourceTokenizer.resolve(file);
+    }
+
+    // State and county code of each row as one key
+    private static ColumnTable.Longs countyKeys(ColumnTable table) {
+        ColumnTable.Ints stateCodes = table.ints("state_code"), countyCodes = table.ints("county_code");
+        return row -> ((long) stateCodes.get(row) << 32) | (countyCodes.get(row) & 0xffffffffL);
+    }
+
+    // Row of the referenced table each library's id column points at
+    private int[] references(ColumnTable referenced, String id) {
+        return KeyIndex.of(referenced.longs(id), referenced.rows()).rows(libraries.longs(id), libraries.rows());
+    }
+
+    public ReportRows librariesOrderedByTotalOperatingRevenue() {
+        int[] rows = librariesWith(operatingOf);
+        long[] totals = perLibrary(operatingOf, operatingTotal);
+        rows = sorted(rows, Comparator.comparingLong(library -> totals[library]));
+
+        return new MemoryRows(rows,
+            new String[] { "library_name", "total_operating_revenue" },
+            libraries.strings("library_name")::get,
+            library -> totals[library]);
+    }
+
+    public ReportRows librariesWithIdOfId1OrId2(String id1, String id2) {
+        ColumnTable.Strings ids = libraries.strings("library_id");
+        List<Integer> matches = new ArrayList<>();
+        for (int library = 0; library < libraries.rows(); library++) {
+            if (sqlEquals(ids.get(library), id1) || sqlEquals(ids.get(library), id2)) matches.add(library);
+        }
+
+        return new MemoryRows(unboxed(matches),
+            new String[] { "library_id", "library_name" },
+            ids::get,
+            libraries.strings("library_name")::get);
+    }
+
+    public ReportRows averageStateLicensedDatabasesPerLibraryForCountiesThatBelongToStatesWithLessThan5Counties() {
+        int[] countiesPerState = new int[states.rows()];
+        for (int county = 0; county < counties.rows(); county++) {
+            if (countyStateOf[county] >= 0) countiesPerState[countyStateOf[county]]++;
+        }
+
+        ColumnTable.Ints countyCodes = counties.ints("county_code"), stateCodes = counties.ints("state_code");
+        ColumnTable.Ints stateLicensed = databases.ints("state_licensed_databases");
+        Map<Integer, int[]> groups = new LinkedHashMap<>(); // county row -> sum, count
+        for (int library = 0; library < libraries.rows(); library++) {
+            int county = countyOf[library];
+            if (stateOf[library] < 0 || county < 0 || databasesOf[library] < 0) continue;
+            if (countiesPerState[stateOf[library]] >= 5) continue;
+
+            int[] group = groups.computeIfAbsent(county, row -> new int[2]);
+            group[0] += stateLicensed.get(databasesOf[library]);
+            group[1]++;
+        }
+
+        List<Object[]> records = new ArrayList<>();
+        groups.forEach((county, group) -> records.add(new Object[] { countyCodes.get(county), stateCodes.get(county), group[0] / group[1] }));
+        records.sort(Comparator.comparingInt(record -> (Integer) record[2]));
+
+        return MemoryRows.of(records, "county_code", "state_code", "average_state_licensed_databases_per_library_for_county");
+    }
+
+    public ReportRows top10LibrariesWithHighestAveragePay() {
+        int[] rows = librariesWith(staffOf, employeeOf);
+        BigDecimal[] averages = new BigDecimal[libraries.rows()];
+        for (int library : rows) {
+            long staffCount = staffTotal[staffOf[library]];
+            if (staffCount == 0) continue;
+            averages[library] = BigDecimal.valueOf(employeeTotal[employeeOf[library]])
+                .divide(BigDecimal.valueOf(staffCount), AVERAGE_SCALE, RoundingMode.HALF_UP);
+        }
+
+        // Nulls sort lowest, so they come last in descending order
+        Comparator<Integer> byAverage = Comparator.comparing(library -> averages[library], Comparator.nullsFirst(Comparator.<BigDecimal>naturalOrder()));
+        rows = top(sorted(rows, byAverage.reversed()));
+
+        return new MemoryRows(rows,
+            new String[] { "library_name", "average_pay" },
+            libraries.strings("library_name")::get,
+            library -> averages[library]);
+    }
+
+    public ReportRows schoolsWithStatePopulation() {
+        Integer[] statePopulation = new Integer[states.rows()];
+        ColumnTable.Ints population = counties.ints("county_population");
+        for (int county = 0; county < counties.rows(); county++) {
+            int state = countyStateOf[county];
+            if (state < 0) continue;
+            statePopulation[state] = (statePopulation[state] == null ? 0 : statePopulation[state]) + population.get(county);
+        }
+
+        List<Integer> matches = new ArrayList<>();
+        for (int school = 0; school < schools.rows(); school++) {
+            if (schoolStateOf[school] >= 0 && statePopulation[schoolStateOf[school]] != null) matches.add(school);
+        }
+
+        return new MemoryRows(unboxed(matches),
+            new String[] { "school_name", "state_alpha_code", "state_population" },
+            schools.strings("school_name")::get,
+            school -> states.strings("state_alpha_code").get(schoolStateOf[school]),
+            school -> statePopulation[schoolStateOf[school]]);
+    }
+
+    public ReportRows top10CountiesOrderedByLibrariesCountThenBySchoolsCount() {
+        int[] schoolsPerState = new int[states.rows()];
+        for (int school = 0; school < schools.rows(); school++) {
+            if (schoolStateOf[school] >= 0) schoolsPerState[schoolStateOf[school]]++;
+        }
+
+        int[] librariesPerCounty = new int[counties.rows()];
+        for (int library = 0; library < libraries.rows(); library++) {
+            if (stateOf[library] >= 0 && countyOf[library] >= 0) librariesPerCounty[countyOf[library]]++;
+        }
+
+        ColumnTable.Ints countyCodes = counties.ints("county_code"), stateCodes = counties.ints("state_code");
+        List<Object[]> records = new ArrayList<>();
+        for (int county = 0; county < counties.rows(); county++) {
+            if (countyStateOf[county] < 0) continue;
+            int librariesCount = librariesPerCounty[county], schoolsCount = schoolsPerState[countyStateOf[county]];
+            if (librariesCount > 0 && schoolsCount > 0) {
+                records.add(new Object[] { countyCodes.get(county), stateCodes.get(county), schoolsCount, librariesCount });
+            }
+        }
+
+        Comparator<Object[]> byLibraries = Comparator.comparingInt(record -> (Integer) record[3]);
+        Comparator<Object[]> bySchools = Comparator.comparingInt(record -> (Integer) record[2]);
+        records.sort(byLibraries.reversed().thenComparing(bySchools.reversed()));
+
+        return MemoryRows.of(records.subList(0, Math.min(TOP, records.size())), "county_code", "state_code", "schools_count", "libraries_count");
+    }
+
+    public ReportRows top10MostExpensiveLibrariesToRun() {
+        int[] rows = librariesWith(operatingOf, capitalOf, collectionOf, employeeOf);
+        long[] costs = new long[libraries.rows()];
+        for (int library : rows) {
+            costs[library] = (operatingTotal[operatingOf[library]] + capitalTotal[capitalOf[library]])
+                - (employeeTotal[employeeOf[library]] + collectionTotal[collectionOf[library]]);
+        }
+        rows = top(sorted(rows, Comparator.<Integer>comparingLong(library -> costs[library]).reversed()));
+
+        return new MemoryRows(rows,
+            new String[] { "library_name", "total_cost" },
+            libraries.strings("library_name")::get,
+            library -> costs[library]);
+    }
+
+    public ReportRows staffCountAndStaffPayPerLibrary() {
+        int[] rows = librariesWith(staffOf, employeeOf);
+        long[] staffCounts = perLibrary(staffOf, staffTotal), expenditures = perLibrary(employeeOf, employeeTotal);
+        Comparator<Integer> byStaff = Comparator.comparingLong(library -> staffCounts[library]);
+        Comparator<Integer> byExpenditures = Comparator.comparingLong(library -> expenditures[library]);
+        rows = sorted(rows, byStaff.reversed().thenComparing(byExpenditures.reversed()));
+
+        ColumnTable.Longs librarians = staff.numerics("librarians"), employees = staff.numerics("employees");
+        ColumnTable.Longs salaries = employee.numerics("salaries"), benefits = employee.numerics("benefits");
+        return new MemoryRows(rows,
+            new String[] { "library_name", "librarians", "employees", "total_staff", "salaries", "benefits", "total_employee_expenditures" },
+            libraries.strings("library_name")::get,
+            library -> librarians.get(staffOf[library]),
+            library -> employees.get(staffOf[library]),
+            library -> staffCounts[library],
+            library -> salaries.get(employeeOf[library]),
+            library -> benefits.get(employeeOf[library]),
+            library -> expenditures[library]);
+    }
+
+    // Libraries join counties on the county code alone, and the counties group by state, population and name
+    public ReportRows libraryCountPerCounty() {
+        Map<Integer, Integer> librariesPerCountyCode = new HashMap<>();
+        ColumnTable.Ints libraryCountyCodes = libraries.ints("county_code");
+        for (int library = 0; library < libraries.rows(); library++) librariesPerCountyCode.merge(libraryCountyCodes.get(library), 1, Integer::sum);
+
+        ColumnTable.Ints countyCodes = counties.ints("county_code"), population = counties.ints("county_population");
+        ColumnTable.Strings names = counties.strings("county_name"), alphaCodes = states.strings("state_alpha_code");
+        Map<String, Object[]> groups = new LinkedHashMap<>();
+        for (int county = 0; county < counties.rows(); county++) {
+            int state = countyStateOf[county];
+            Integer librariesCount = librariesPerCountyCode.get(countyCodes.get(county));
+            if (state < 0 || librariesCount == null) continue;
+
+            String alphaCode = alphaCodes.get(state), name = names.get(county);
+            int countyPopulation = population.get(county);
+            String group = collated(alphaCode) + Delimiter.TAB + countyPopulation + Delimiter.TAB + collated(name);
+            Object[] record = groups.computeIfAbsent(group, key -> new Object[] { alphaCode, name, countyPopulation, 0 });
+            record[3] = (Integer) record[3] + librariesCount;
+        }
+
+        List<Object[]> records = new ArrayList<>(groups.values());
+        records.sort(Comparator.<Object[]>comparingInt(record -> (Integer) record[3]).reversed());
+
+        return MemoryRows.of(records, "state_alpha_code", "county_name", "county_population", "library_count");
+    }
+
+    public ReportRows databaseCountPerLibrary() {
+        int[] rows = librariesWith(databasesOf);
+        long[] totals = perLibrary(databasesOf, databasesTotal);
+        rows = sorted(rows, Comparator.<Integer>comparingLong(library -> totals[library]).reversed());
+
+        ColumnTable.Ints local = databases.ints("local_cooperative_agreements"), stateLicensed = databases.ints("state_licensed_databases");
+        return new MemoryRows(rows,
+            new String[] { "library_name", "local_cooperative_agreements", "state_licensed_databases", "total_databases" },
+            libraries.strings("library_name")::get,
+            library -> local.get(databasesOf[library]),
+            library -> stateLicensed.get(databasesOf[library]),
+            library -> (int) totals[library]);
+    }
+
+    public ReportRows addressesOfEachLibrary() {
+        int[] rows = librariesWith(stateOf, countyOf);
+        ColumnTable.Ints zipcodes = libraries.ints("zipcode");
+        ColumnTable.Doubles latitudes = libraries.doubles("latitude"), longitudes = libraries.doubles("longitude");
+
+        return new MemoryRows(rows,
+            new String[] { "library_name", "street_address", "city", "zipcode", "state_alpha_code", "county_name", "latitude", "longitude" },
+            libraries.strings("library_name")::get,
+            libraries.strings("street_address")::get,
+            libraries.strings("city")::get,
+            library -> zipcodes.get(library),
+            library -> states.strings("state_alpha_code").get(stateOf[library]),
+            library -> counties.strings("county_name").get(countyOf[library]),
+            library -> latitudes.get(library),
+            library -> longitudes.get(library));
+    }
+
+    public ReportRows librariesWithCoordinates() {
+        int[] rows = librariesWith(stateOf);
+        ColumnTable.Doubles latitudes = libraries.doubles("latitude"), longitudes = libraries.doubles("longitude");
+
+        return new MemoryRows(rows,
+            new String[] { "library_name", "city", "state_alpha_code", "latitude", "longitude" },
+            libraries.strings("library_name")::get,
+            libraries.strings("city")::get,
+            library -> states.strings("state_alpha_code").get(stateOf[library]),
+            library -> latitudes.get(library),
+            library -> longitudes.get(library));
+    }
+
+    public ReportRows capitalRevenuesOfEachLibraryOrderedMostToLeast() {
+        return metricsDescending(capital, capitalOf, capitalTotal, "total_capital_revenue",
+            "local_government_capital_revenue", "state_government_capital_revenue", "federal_government_capital_revenue", "other_capital_revenue");
+    }
+
+    public ReportRows operatingRevenuesOfEachLibraryOrderedMostToLeast() {
+        return metricsDescending(operating, operatingOf, operatingTotal, "total_operating_revenue",
+            "local_government_operating_revenue", "state_government_operating_revenue", "federal_government_operating_revenue", "other_operating_revenue");
+    }
+
+    public ReportRows collectionExpendituresOfEachLibraryOrderedMostToLeast() {
+        return metricsDescending(collection, collectionOf, collectionTotal, "total_collection_expenditures",
+            "print_collection_expenditures", "digital_collection_expenditures", "other_collection_expenditures");
+    }
+
+    // Library name, the numeric columns of the metric table and their total, largest total first
+    private MemoryRows metricsDescending(ColumnTable metrics, int[] metricsOf, long[] metricsTotal, String total, String... columns) {
+        int[] rows = librariesWith(metricsOf);
+        long[] totals = perLibrary(metricsOf, metricsTotal);
+        rows = sorted(rows, Comparator.<Integer>comparingLong(library -> totals[library]).reversed());
+
+        String[] labels = new String[columns.length + 2];
+        MemoryRows.Cell[] cells = new MemoryRows.Cell[columns.length + 2];
+        labels[0] = "library_name";
+        cells[0] = libraries.strings("library_name")::get;
+        for (int i = 0; i < columns.length; i++) {
+            ColumnTable.Longs values = metrics.numerics(columns[i]);
+            labels[i + 1] = columns[i];
+            cells[i + 1] = library -> values.get(metricsOf[library]);
+        }
+        labels[columns.length + 1] = total;
+        cells[columns.length + 1] = library -> totals[library];
+
+        return new MemoryRows(rows, labels, cells);
+    }
+
+    // Libraries that reference a row in every one of the tables
+    private int[] librariesWith(int[]... references) {
+        List<Integer> rows = new ArrayList<>();
+        for (int library = 0; library < libraries.rows(); library++) {
+            boolean joined = true;
+            for (int[] reference : references) joined &= reference[library] >= 0;
+            if (joined) rows.add(library);
+        }
+        return unboxed(rows);
+    }
+
+    private long[] perLibrary(int[] reference, long[] values) {
+        long[] perLibrary = new long[libraries.rows()];
+        for (int library = 0; library < perLibrary.length; library++) {
+            if (reference[library] >= 0) perLibrary[library] = values[reference[library]];
+        }
+        return perLibrary;
+    }
+
+    // Stable, so rows with equal keys stay in source order
+    private static int[] sorted(int[] rows, Comparator<Integer> order) {
+        Integer[] boxed = new Integer[rows.length];
+        for (int i = 0; i < rows.length; i++) boxed[i] = rows[i];
+        Arrays.sort(boxed, order);
+        return unboxed(Arrays.asList(boxed));
+    }
+
+    private static int[] top(int[] rows) {
+        return Arrays.copyOf(rows, Math.min(TOP, rows.length));
+    }
+
+    private static int[] unboxed(List<Integer> rows) {
+        int[] unboxed = new int[rows.size()];
+        for (int i = 0; i < unboxed.length; i++) unboxed[i] = rows.get(i);
+        return unboxed;
+    }
+
+    // Equality under a case insensitive collation, which ignores trailing spaces
+    private static boolean sqlEquals(String value, String other) {
+        return value != null && other != null && collated(value).equals(collated(other));
+    }
+
+    private static String collated(String value) {
+        return value.stripTrailing().toUpperCase(Locale.ROOT);
+    }
+}
+
+// One table of the in-memory engine, rows in source order. Columns are read
+// through Ints, Longs, Doubles and Strings, backed by arrays when parsed from the
+// data files or by the sections of a mapped ColumnSnapshot
+final class ColumnTable {
+
+    @FunctionalInterface
+    interface Ints {
+        int get(int row);
+    }
+
+    @FunctionalInterface
+    interface Longs {
+        long get(int row);
+    }
+
+    @FunctionalInterface
+    interface Doubles {
+        double get(int row);
+    }
+
+    // Each row holds the code of one of the distinct values
+    interface Strings {
+        int code(int row);
+
+        int distinct();
+
+        String value(int code);
+
+        default String get(int row) {
+            return value(code(row));
+        }
+    }
+
+    final String name;
+    private final Map<String, Object> columns = new LinkedHashMap<>();
+    private int rows;
+
+    ColumnTable(String name, int rows) {
+        this.name = name;
+        this.rows = rows;
+    }
+
+    // Reads the rows of a mapped source the way MappedTableSeeder binds them
+    public static ColumnTable load(TableMapping mapping, String file) throws IOException {
+        ColumnTable table = new ColumnTable(mapping.table, 0);
+        List<TableMapping.ColumnMapping> bySource = new ArrayList<>(mapping.columnMappings());
+        bySource.sort(Comparator.comparingInt(column -> column.source));
+
+        Vector[] vectors = new Vector[bySource.size()];
+        for (int i = 0; i < vectors.length; i++) {
+            TableMapping.ColumnMapping column = bySource.get(i);
+            vectors[i] = column.type == TableMapping.Type.INT ? new IntVector()
+                : column.type == TableMapping.Type.DOUBLE ? new NumericVector()
+                : column.type == TableMapping.Type.FLOAT ? new DoubleVector()
+                : new StringVector();
+        }
+        for (TableMapping.ColumnMapping column : mapping.columnMappings()) {
+            table.put(column.column, vectors[bySource.indexOf(column)]);
+        }
+
+        try (SourceTokenizer cells = SourceTokenizer.open(file, mapping.delimiter)) {
+            cells.nextRecord();
+            while (cells.nextRecord()) {
+                int nextSource = 0;
+                for (int i = 0; i < vectors.length; i++) {
+                    TableMapping.ColumnMapping column = bySource.get(i);
+                    for (; nextSource < column.source; nextSource++) cells.skipCell();
+                    nextSource = column.source + 1;
+
+                    if (column.blank == TableMapping.Blank.ZERO && MappedTableSeeder.blank(cells)) vectors[i].addBlank();
+                    else vectors[i].add(cells);
+                }
+                table.rows++;
+            }
+        }
+
+        for (Vector vector : vectors) vector.trim(table.rows);
+        return table;
+    }
+
+    // Reads schools.txt through the reader SchoolsSeeder uses
+    public static ColumnTable loadSchools(String file) throws IOException {
+        ColumnTable table = new ColumnTable(Table.T_SCHOOLS, 0);
+        IntVector codes = new IntVector(), stateCodes = new IntVector();
+        StringVector names = new StringVector();
+        table.put("school_code", codes);
+        table.put("school_name", names);
+        table.put("state_code", stateCodes);
+
+        try {
+            new SchoolsSeeder.SchoolsReader(file).read((code, name, state, stateCode, record) -> {
+                codes.add(code);
+                names.add(name);
+                stateCodes.add(stateCode);
+                table.rows++;
+            });
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+
+        codes.trim(table.rows);
+        names.trim(table.rows);
+        stateCodes.trim(table.rows);
+        return table;
+    }
+
+    void put(String column, Object values) {
+        columns.put(column, values);
+    }
+
+    // Column name -> Ints, Longs, Doubles or Strings, in insertion order
+    Map<String, Object> columns() {
+        return Collections.unmodifiableMap(columns);
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    public Ints ints(String column) {
+        return (Ints) columns.get(column);
+    }
+
+    // Whole numbers of a numeric(18,0) column
+    public Longs numerics(String column) {
+        return (Longs) columns.get(column);
+    }
+
+    // Values of a float column
+    public Doubles doubles(String column) {
+        return (Doubles) columns.get(column);
+    }
+
+    public Strings strings(String column) {
+        return (Strings) columns.get(column);
+    }
+
+    // An integer or numeric column read as longs
+    public Longs longs(String column) {
+        Object values = columns.get(column);
+        if (values instanceof Longs) return (Longs) values;
+        Ints ints = (Ints) values;
+        return row -> ints.get(row);
+    }
+
+    // Per row, the sum of the columns
+    public long[] sum(String... columns) {
+        long[] sums = new long[rows];
+        for (String column : columns) {
+            Longs values = longs(column);
+            for (int row = 0; row < rows; row++) sums[row] += values.get(row);
+        }
+        return sums;
+    }
+
+    private interface Vector {
+        void add(SourceTokenizer cells);
+        void addBlank();
+        void trim(int rows);
+    }
+
+    static final class IntVector implements Vector, Ints {
+        private int[] values = new int[1024];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        @Override
+        public int get(int row) {
+            return values[row];
+        }
+
+        @Override
+        public void add(SourceTokenizer cells) {
+            add(cells.nextInt());
+        }
+
+        @Override
+        public void addBlank() {
+            add(0);
+        }
+
+        @Override
+        public void trim(int rows) {
+            values = Arrays.copyOf(values, rows);
+        }
+    }
+
+    // Rounded half away from zero, as a double binds to a numeric(18,0) column
+    static final class NumericVector implements Vector, Longs {
+        private long[] values = new long[1024];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        @Override
+        public long get(int row) {
+            return values[row];
+        }
+
+        @Override
+        public void add(SourceTokenizer cells) {
+            add(BigDecimal.valueOf(cells.nextDouble()).setScale(0, RoundingMode.HALF_UP).longValue());
+        }
+
+        @Override
+        public void addBlank() {
+            add(0);
+        }
+
+        @Override
+        public void trim(int rows) {
+            values = Arrays.copyOf(values, rows);
+        }
+    }
+
+    static final class DoubleVector implements Vector, Doubles {
+        private double[] values = new double[1024];
+        private int size;
+
+        void add(double value) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        @Override
+        public double get(int row) {
+            return values[row];
+        }
+
+        @Override
+        public void add(SourceTokenizer cells) {
+            add(cells.nextDouble());
+        }
+
+        @Override
+        public void addBlank() {
+            add(0);
+        }
+
+        @Override
+        public void trim(int rows) {
+            values = Arrays.copyOf(values, rows);
+        }
+    }
+
+    static final class StringVector implements Vector, Strings {
+        private int[] codes = new int[1024];
+        private final List<String> dictionary = new ArrayList<>();
+        private final Map<String, Integer> lookup = new HashMap<>();
+        private int size;
+
+        void add(String value) {
+            if (size == codes.length) codes = Arrays.copyOf(codes, size * 2);
+            codes[size++] = lookup.computeIfAbsent(value, added -> {
+                dictionary.add(added);
+                return dictionary.size() - 1;
+            });
+        }
+
+        @Override
+        public int code(int row) {
+            return codes[row];
+        }
+
+        @Override
+        public int distinct() {
+            return dictionary.size();
+        }
+
+        @Override
+        public String value(int code) {
+            return dictionary.get(code);
+        }
+
+        @Override
+        public void add(SourceTokenizer cells) {
+            add(cells.nextString());
+        }
+
+        @Override
+        public void addBlank() {
+            add("");
+        }
+
+        @Override
+        public void trim(int rows) {
+            codes = Arrays.copyOf(codes, rows);
+        }
+    }
+}
+
+// Binary image of the in-memory engine's tables, opened by mapping it
+// instead of parsing the data files. Little endian: a header (magic,
+// version, table count, schema end), the schema (the path, size, modified
+// time and SHA-256 of every data file read, then per table its name and
+// row count, per column its name, kind and where its sections start), then
+// the 8-byte aligned column sections: 4 bytes a row for integers, 8 for
+// numerics and floats, and for strings a 4-byte code a row, the 4-byte end offset of
+// each distinct value and the values' UTF-8 bytes. Every section is mapped
+// on its own, so opening reads only the schema and copies no column to the heap
+final class ColumnSnapshot {
+
+    private static final byte[] MAGIC = "USLIBSNP".getBytes(StandardCharsets.US_ASCII);
+    private static final int VERSION = 3;
+    private static final int HEADER_BYTES = MAGIC.length + 4 + 4 + 8;
+
+    private static final byte INTS = 'I', LONGS = 'L', DOUBLES = 'D', STRINGS = 'S';
+
+    // A data file as it was when the snapshot was written from it
+    static final class Source {
+        final String path;
+        final long size;
+        final long modified;
+        final String checksum;
+
+        private Source(String path, long size, long modified, String checksum) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+            this.checksum = checksum;
+        }
+
+        // The files in order, hashed concurrently
+        public static List<Source> of(List<String> files) throws IOException {
+            Map<String, List<String>> byPath = new HashMap<>();
+            for (String file : files) byPath.put(file, Collections.singletonList(file));
+            Map<String, SourceFingerprint> fingerprints = SourceFingerprint.ofAll(byPath, Runtime.getRuntime().availableProcessors());
+
+            List<Source> sources = new ArrayList<>();
+            for (String file : files) {
+                Path path = Paths.get(file);
+                SourceFingerprint fingerprint = fingerprints.get(file);
+                sources.add(new Source(canonical(file), fingerprint.size, Files.getLastModifiedTime(path).toMillis(), fingerprint.checksum));
+            }
+            return sources;
+        }
+
+        // Same path and size, and the same modified time or else the same contents
+        boolean matches(String file) throws IOException {
+            Path current = Paths.get(file);
+            if (!path.equals(canonical(file)) || !Files.exists(current) || Files.size(current) != size) return false;
+            if (Files.getLastModifiedTime(current).toMillis() == modified) return true;
+            return SourceFingerprint.of(Collections.singletonList(file)).matches(size, checksum);
+        }
+
+        private static String canonical(String file) {
+            return Paths.get(file).toAbsolutePath().normalize().toString();
+        }
+    }
+
+    // Usable when it was written by this version from the same files, unchanged since
+    public static boolean isFresh(String snapshot, List<String> sources) throws IOException {
+        Path path = Paths.get(snapshot);
+        if (!Files.exists(path) || Files.size(path) < HEADER_BYTES) return false;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = map(channel, 0, HEADER_BYTES);
+            byte[] magic = new byte[MAGIC.length];
+            header.get(magic);
+            if (!Arrays.equals(magic, MAGIC) || header.getInt() != VERSION) return false;
+            header.getInt();
+            long schemaBytes = header.getLong();
+            if (schemaBytes > channel.size()) return false;
+
+            List<Source> recorded = readSources(map(channel, HEADER_BYTES, schemaBytes - HEADER_BYTES));
+            if (recorded.size() != sources.size()) return false;
+            for (int i = 0; i < recorded.size(); i++) {
+                if (!recorded.get(i).matches(sources.get(i))) return false;
+            }
+        }
+        return true;
+    }
+
+    // Writes a temporary file moved over the snapshot once complete, recording the sources the tables were read from
+    public static void write(Collection<ColumnTable> tables, String snapshot, List<Source> sources) throws IOException {
+        Map<Object, byte[][]> dictionaries = new HashMap<>();
+        ByteArrayOutputStream schema = new ByteArrayOutputStream();
+        DataOutputStream schemaOut = new DataOutputStream(schema);
+
+        // Sections follow the schema, whose size does not depend on the offsets in it
+        long schemaBytes = HEADER_BYTES + 4;
+        for (Source source : sources) {
+            schemaBytes += 4 + name(source.path).length + 8 + 8 + 4 + name(source.checksum).length;
+        }
+        for (ColumnTable table : tables) {
+            schemaBytes += 4 + name(table.name).length + 4 + 4;
+            for (Map.Entry<String, Object> column : table.columns().entrySet()) {
+                schemaBytes += 4 + name(column.getKey()).length + 1 + (column.getValue() instanceof ColumnTable.Strings ? 4 + 8 * 3 : 8);
+            }
+        }
+
+        long offset = aligned(schemaBytes);
+        schemaOut.writeInt(Integer.reverseBytes(sources.size()));
+        for (Source source : sources) {
+            writeName(schemaOut, source.path);
+            schemaOut.writeLong(Long.reverseBytes(source.size));
+            schemaOut.writeLong(Long.reverseBytes(source.modified));
+            writeName(schemaOut, source.checksum);
+        }
+        for (ColumnTable table : tables) {
+            writeName(schemaOut, table.name);
+            schemaOut.writeInt(Integer.reverseBytes(table.rows()));
+            schemaOut.writeInt(Integer.reverseBytes(table.columns().size()));
+
+            for (Map.Entry<String, Object> column : table.columns().entrySet()) {
+                Object values = column.getValue();
+                writeName(schemaOut, column.getKey());
+
+                if (values instanceof ColumnTable.Strings) {
+                    byte[][] encoded = encoded((ColumnTable.Strings) values);
+                    dictionaries.put(values, encoded);
+                    long bytes = 0;
+                    for (byte[] value : encoded) bytes += value.length;
+
+                    schemaOut.writeByte(STRINGS);
+                    schemaOut.writeInt(Integer.reverseBytes(encoded.length));
+                    schemaOut.writeLong(Long.reverseBytes(offset));
+                    offset = aligned(offset + 4L * table.rows());
+                    schemaOut.writeLong(Long.reverseBytes(offset));
+                    offset = aligned(offset + 4L * encoded.length);
+                    schemaOut.writeLong(Long.reverseBytes(offset));
+                    offset = aligned(offset + bytes);
+                } else {
+                    boolean ints = values instanceof ColumnTable.Ints;
+                    schemaOut.writeByte(ints ? INTS : values instanceof ColumnTable.Doubles ? DOUBLES : LONGS);
+                    schemaOut.writeLong(Long.reverseBytes(offset));
+                    offset = aligned(offset + (ints ? 4L : 8L) * table.rows());
+                }
+            }
+        }
+
+        Path target = Paths.get(snapshot);
+        Path temporary = Paths.get(snapshot + ".tmp");
+        try (SnapshotOutput out = new SnapshotOutput(FileChannel.open(temporary,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))) {
+            out.put(MAGIC);
+            out.putInt(VERSION);
+            out.putInt(tables.size());
+            out.putLong(schemaBytes);
+            out.put(schema.toByteArray());
+            out.align();
+
+            for (ColumnTable table : tables) {
+                for (Object values : table.columns().values()) {
+                    if (values instanceof ColumnTable.Ints) {
+                        ColumnTable.Ints ints = (ColumnTable.Ints) values;
+                        for (int row = 0; row < table.rows(); row++) out.putInt(ints.get(row));
+                    } else if (values instanceof ColumnTable.Longs) {
+                        ColumnTable.Longs longs = (ColumnTable.Longs) values;
+                        for (int row = 0; row < table.rows(); row++) out.putLong(longs.get(row));
+                    } else if (values instanceof ColumnTable.Doubles) {
+                        ColumnTable.Doubles doubles = (ColumnTable.Doubles) values;
+                        for (int row = 0; row < table.rows(); row++) out.putLong(Double.doubleToRawLongBits(doubles.get(row)));
+                    } else {
+                        ColumnTable.Strings strings = (ColumnTable.Strings) values;
+                        for (int row = 0; row < table.rows(); row++) out.putInt(strings.code(row));
+                        out.align();
+                        int end = 0;
+                        for (byte[] value : dictionaries.get(values)) out.putInt(end += value.length);
+                        out.align();
+                        for (byte[] value : dictionaries.get(values)) out.put(value);
+                    }
+                    out.align();
+                }
+            }
+        }
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Tables of the snapshot by name, their columns reading the mapped sections
+    public static Map<String, ColumnTable> open(String snapshot) throws IOException {
+        Map<String, ColumnTable> tables = new HashMap<>();
+
+        try (FileChannel channel = FileChannel.open(Paths.get(snapshot), StandardOpenOption.READ)) {
+            ByteBuffer header = map(channel, 0, HEADER_BYTES);
+            byte[] magic = new byte[MAGIC.length];
+            header.get(magic);
+            if (!Arrays.equals(magic, MAGIC) || header.getInt() != VERSION) {
+                throw new IOException("Not a version " + VERSION + " snapshot: " + snapshot);
+            }
+            int tableCount = header.getInt();
+            long schemaBytes = header.getLong();
+
+            ByteBuffer schema = map(channel, HEADER_BYTES, schemaBytes - HEADER_BYTES);
+            readSources(schema);
+            for (int t = 0; t < tableCount; t++) {
+                ColumnTable table = new ColumnTable(readName(schema), schema.getInt());
+                int rows = table.rows(), columns = schema.getInt();
+
+                for (int c = 0; c < columns; c++) {
+                    String column = readName(schema);
+                    byte kind = schema.get();
+
+                    if (kind == STRINGS) {
+                        int distinct = schema.getInt();
+                        long codes = schema.getLong(), ends = schema.getLong(), bytes = schema.getLong();
+                        IntBuffer endOffsets = map(channel, ends, 4L * distinct).asIntBuffer();
+                        long byteCount = distinct == 0 ? 0 : endOffsets.get(distinct - 1);
+                        table.put(column, new MappedStrings(
+                            map(channel, codes, 4L * rows).asIntBuffer(), endOffsets, map(channel, bytes, byteCount)));
+                    } else if (kind == INTS) {
+                        IntBuffer values = map(channel, schema.getLong(), 4L * rows).asIntBuffer();
+                        table.put(column, (ColumnTable.Ints) values::get);
+                    } else if (kind == DOUBLES) {
+                        DoubleBuffer values = map(channel, schema.getLong(), 8L * rows).asDoubleBuffer();
+                        table.put(column, (ColumnTable.Doubles) values::get);
+                    } else {
+                        LongBuffer values = map(channel, schema.getLong(), 8L * rows).asLongBuffer();
+                        table.put(column, (ColumnTable.Longs) values::get);
+                    }
+                }
+                tables.put(table.name, table);
+            }
+        }
+        return tables;
+    }
+
+    // Reads the sources at the start of the schema, leaving it at the first table
+    private static List<Source> readSources(ByteBuffer schema) {
+        List<Source> sources = new ArrayList<>();
+        for (int count = schema.getInt(); sources.size() < count; ) {
+            sources.add(new Source(readName(schema), schema.getLong(), schema.getLong(), readName(schema)));
+        }
+        return sources;
+    }
+
+    private static ByteBuffer map(FileChannel channel, long offset, long size) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static long aligned(long offset) {
+        return (offset + 7) & ~7L;
+    }
+
+    private static byte[] name(String name) {
+        return name.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void writeName(DataOutputStream out, String name) throws IOException {
+        byte[] bytes = name(name);
+        out.writeInt(Integer.reverseBytes(bytes.length));
+        out.write(bytes);
+    }
+
+    private static String readName(ByteBuffer schema) {
+        byte[] bytes = new byte[schema.getInt()];
+        schema.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[][] encoded(ColumnTable.Strings strings) {
+        byte[][] encoded = new byte[strings.distinct()][];
+        for (int code = 0; code < encoded.length; code++) encoded[code] = strings.value(code).getBytes(StandardCharsets.UTF_8);
+        return encoded;
+    }
+
+    // Decodes a distinct value the first time it is read
+    private static final class MappedStrings implements ColumnTable.Strings {
+        private final IntBuffer codes, ends;
+        private final ByteBuffer bytes;
+        private final String[] decoded;
+
+        MappedStrings(IntBuffer codes, IntBuffer ends, ByteBuffer bytes) {
+            this.codes = codes;
+            this.ends = ends;
+            this.bytes = bytes;
+            this.decoded = new String[ends.capacity()];
+        }
+
+        @Override
+        public int code(int row) {
+            return codes.get(row);
+        }
+
+        @Override
+        public int distinct() {
+            return decoded.length;
+        }
+
+        @Override
+        public String value(int code) {
+            String value = decoded[code];
+            if (value == null) {
+                int start = code == 0 ? 0 : ends.get(code - 1);
+                byte[] utf8 = new byte[ends.get(code) - start];
+                ByteBuffer source = bytes.duplicate();
+                source.position(start);
+                source.get(utf8);
+                decoded[code] = value = new String(utf8, StandardCharsets.UTF_8);
+            }
+            return value;
+        }
+    }
+
+    // Buffered little endian writes to a channel
+    private static final class SnapshotOutput implements Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+        private long position;
+
+        SnapshotOutput(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+            position += 4;
+        }
+
+        void putLong(long value) throws IOException {
+            ensure(8);
+            buffer.putLong(value);
+            position += 8;
+        }
+
+        void put(byte[] bytes) throws IOException {
+            for (int written = 0; written < bytes.length; ) {
+                ensure(1);
+                int length = Math.min(buffer.remaining(), bytes.length - written);
+                buffer.put(bytes, written, length);
+                written += length;
+                position += length;
+            }
+        }
+
+        void align() throws IOException {
+            while (position % 8 != 0) {
+                ensure(1);
+                buffer.put((byte) 0);
+                position++;
+            }
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) flush();
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) channel.write(buffer);
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+            channel.force(false);
+            channel.close();
+        }
+    }
+}
+
+// Row of each key of a column, through an array over the key range when
+// the keys are dense enough and a map otherwise. A repeated key keeps its first row
+final class KeyIndex {
+
+    private static final int MISSING = -1;
+
+    private final long min;
+    private final int[] dense;
+    private final Map<Long, Integer> sparse;
+
+    private KeyIndex(long min, int[] dense, Map<Long, Integer> sparse) {
+        this.min = min;
+        this.dense = dense;
+        this.sparse = sparse;
+    }
+
+    public static KeyIndex of(ColumnTable.Longs keys, int rows) {
+        long min = Long.MAX_VALUE, max = Long.MIN_VALUE;
+        for (int row = 0; row < rows; row++) {
+            min = Math.min(min, keys.get(row));
+            max = Math.max(max, keys.get(row));
+        }
+
+        if (rows > 0 && max - min < 4L * rows + 1024) {
+            int[] dense = new int[(int) (max - min + 1)];
+            Arrays.fill(dense, MISSING);
+            for (int row = 0; row < rows; row++) {
+                int slot = (int) (keys.get(row) - min);
+                if (dense[slot] == MISSING) dense[slot] = row;
+            }
+            return new KeyIndex(min, dense, null);
+        }
+
+        Map<Long, Integer> sparse = new HashMap<>();
+        for (int row = 0; row < rows; row++) sparse.putIfAbsent(keys.get(row), row);
+        return new KeyIndex(0, null, sparse);
+    }
+
+    public int row(long key) {
+        if (dense == null) return sparse.getOrDefault(key, MISSING);
+        long slot = key - min;
+        return slot < 0 || slot >= dense.length ? MISSING : dense[(int) slot];
+    }
+
+    // Row of each of the keys, -1 for those missing
+    public int[] rows(ColumnTable.Longs keys, int count) {
+        int[] rows = new int[count];
+        for (int i = 0; i < count; i++) rows[i] = row(keys.get(i));
+        return rows;
+    }
+}
+
+// Libraries sorted by total operating revenue: the totals in a double
+// array and, at the same positions, the row of each library's name. Every
+// lookup binary searches the totals, so nearest, k-nearest and range
+// queries take O(log n) plus the rows they return. Built once from the
+// report's rows and kept until the tables are reloaded
+final class RevenueIndex {
+
+    private final double[] keys;
+    private final int[] ids;
+    private final String[] names;
+    private final long reloads;
+
+    private RevenueIndex(double[] keys, int[] ids, String[] names, long reloads) {
+        this.keys = keys;
+        this.ids = ids;
+        this.names = names;
+        this.reloads = reloads;
+    }
+
+    // Reads the names and totals of the rows, in any order
+    public static RevenueIndex build(ReportRows rows, String name, String total) throws SQLException {
+        long reloads = DbLoader.reloads();
+        ResultColumns.Layout layout = ResultColumns.layout(rows, name, total);
+        int namePosition = layout.positions[0], totalPosition = layout.positions[1];
+
+        List<String> names = new ArrayList<>();
+        double[] totals = new double[1024];
+        while (rows.next()) {
+            if (names.size() == totals.length) totals = Arrays.copyOf(totals, totals.length * 2);
+            totals[names.size()] = rows.getDouble(totalPosition);
+            names.add(rows.getString(namePosition));
+        }
+
+        int size = names.size();
+        int[] ids = new int[size];
+        boolean sorted = true;
+        for (int i = 0; i < size; i++) {
+            ids[i] = i;
+            sorted &= i == 0 || totals[i - 1] <= totals[i];
+        }
+
+        // The report's query returns them sorted already
+        if (!sorted) {
+            double[] byId = totals;
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) order[i] = i;
+            Arrays.sort(order, Comparator.comparingDouble(id -> byId[id]));
+            for (int i = 0; i < size; i++) ids[i] = order[i];
+        }
+
+        double[] keys = new double[size];
+        for (int i = 0; i < size; i++) keys[i] = totals[ids[i]];
+        return new RevenueIndex(keys, ids, names.toArray(new String[0]), reloads);
+    }
+
+    // Whether the tables were reloaded since the index was built
+    public boolean stale() {
+        return reloads != DbLoader.reloads();
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    public double total(int position) {
+        return keys[position];
+    }
+
+    public String name(int position) {
+        return names[ids[position]];
+    }
+
+    // Positions of the k totals closest to the value, closest first
+    public int[] nearest(double value, int k) {
+        int[] positions = new int[Math.min(Math.max(k, 0), keys.length)];
+        int left = lowerBound(value) - 1, right = left + 1;
+        for (int i = 0; i < positions.length; i++) {
+            boolean takeLeft = right == keys.length || left >= 0 && value - keys[left] < keys[right] - value;
+            positions[i] = takeLeft ? left-- : right++;
+        }
+        return positions;
+    }
+
+    // The k closest positions of each value
+    public int[][] nearest(double[] values, int k) {
+        int[][] positions = new int[values.length][];
+        for (int i = 0; i < values.length; i++) positions[i] = nearest(values[i], k);
+        return positions;
+    }
+
+    // Positions from the first total not below low to the last not above high, as [from, to)
+    public int[] range(double low, double high) {
+        int from = lowerBound(low), to = upperBound(high);
+        return new int[] { from, Math.max(from, to) };
+    }
+
+    private int lowerBound(double value) {
+        int low = 0, high = keys.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (keys[middle] < value) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    private int upperBound(double value) {
+        int low = 0, high = keys.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (keys[middle] <= value) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+}
+
+// Libraries by location, as a k-d tree over points on the unit sphere. The
+// straight-line distance between two such points grows with the great-circle
+// distance, so the tree prunes by plain coordinate differences and still
+// returns exactly the closest libraries. Distances are reported by the
+// haversine formula. The tree is implicit: each range of the arrays holds a
+// subtree, its median point at the middle split on the axis of its depth
+final class GeoIndex {
+
+    static final double EARTH_RADIUS_KM = 6371.0088;
+
+    private final double[] x, y, z;
+    private final int[] ids;
+    private final double[] latitudes, longitudes;
+    private final String[][] values;
+    private final long reloads;
+
+    private GeoIndex(double[] latitudes, double[] longitudes, String[][] values, long reloads) {
+        int size = latitudes.length;
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        this.values = values;
+        this.reloads = reloads;
+
+        ids = new int[size];
+        for (int id = 0; id < size; id++) ids[id] = id;
+        double[][] points = new double[size][];
+        for (int id = 0; id < size; id++) points[id] = point(latitudes[id], longitudes[id]);
+        split(points, 0, size, 0);
+
+        x = new double[size];
+        y = new double[size];
+        z = new double[size];
+        for (int i = 0; i < size; i++) {
+            double[] point = points[ids[i]];
+            x[i] = point[0];
+            y[i] = point[1];
+            z[i] = point[2];
+        }
+    }
+
+    // Reads the coordinates of the rows and the values of the labels, shown next to each library found
+    public static GeoIndex build(ReportRows rows, String latitude, String longitude, String... labels) throws SQLException {
+        long reloads = DbLoader.reloads();
+        String[] columns = new String[labels.length + 2];
+        columns[0] = latitude;
+        columns[1] = longitude;
+        System.arraycopy(labels, 0, columns, 2, labels.length);
+        int[] positions = ResultColumns.layout(rows, columns).positions;
+
+        List<String[]> values = new ArrayList<>();
+        double[] latitudes = new double[1024], longitudes = new double[1024];
+        while (rows.next()) {
+            int id = values.size();
+            if (id == latitudes.length) {
+                latitudes = Arrays.copyOf(latitudes, id * 2);
+                longitudes = Arrays.copyOf(longitudes, id * 2);
+            }
+            latitudes[id] = rows.getDouble(positions[0]);
+            longitudes[id] = rows.getDouble(positions[1]);
+            String[] row = new String[labels.length];
+            for (int i = 0; i < row.length; i++) row[i] = rows.getString(positions[i + 2]);
+            values.add(row);
+        }
+
+        int size = values.size();
+        return new GeoIndex(Arrays.copyOf(latitudes, size), Arrays.copyOf(longitudes, size), values.toArray(new String[0][]), reloads);
+    }
+
+    // Whether the tables were reloaded since the index was built
+    public boolean stale() {
+        return reloads != DbLoader.reloads();
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public String[] values(int id) {
+        return values[id];
+    }
+
+    public double latitude(int id) {
+        return latitudes[id];
+    }
+
+    public double longitude(int id) {
+        return longitudes[id];
+    }
+
+    // Kilometres from the library to the point along the earth's surface
+    public double distance(int id, double latitude, double longitude) {
+        double deltaLatitude = Math.toRadians(latitude - latitudes[id]);
+        double deltaLongitude = Math.toRadians(longitude - longitudes[id]);
+        double a = Math.pow(Math.sin(deltaLatitude / 2), 2)
+            + Math.cos(Math.toRadians(latitudes[id])) * Math.cos(Math.toRadians(latitude)) * Math.pow(Math.sin(deltaLongitude / 2), 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    // Ids of the k libraries closest to the point, closest first
+    public int[] nearest(double latitude, double longitude, int k) {
+        Search search = new Search(point(latitude, longitude), Math.min(Math.max(k, 0), ids.length));
+        if (search.capacity > 0) search.nearest(0, ids.length, 0);
+        return search.sorted();
+    }
+
+    // Ids of the libraries within the radius in kilometres of the point, closest first
+    public int[] within(double latitude, double longitude, double radius) {
+        // The chord under an arc of the radius, capped at the diameter
+        double chord = radius / EARTH_RADIUS_KM >= Math.PI ? 2 : 2 * Math.sin(radius / EARTH_RADIUS_KM / 2);
+        Search search = new Search(point(latitude, longitude), ids.length);
+        search.within(0, ids.length, 0, chord * chord);
+        return search.sorted();
+    }
+
+    private static double[] point(double latitude, double longitude) {
+        double phi = Math.toRadians(latitude), lambda = Math.toRadians(longitude);
+        return new double[] { Math.cos(phi) * Math.cos(lambda), Math.cos(phi) * Math.sin(lambda), Math.sin(phi) };
+    }
+
+    // Orders the ids of the range so its median on the axis sits at the middle, then its halves on the next axis
+    private void split(double[][] points, int from, int to, int axis) {
+        if (to - from < 2) return;
+        Integer[] range = new Integer[to - from];
+        for (int i = from; i < to; i++) range[i - from] = ids[i];
+        Arrays.sort(range, Comparator.comparingDouble(id -> points[id][axis]));
+        for (int i = from; i < to; i++) ids[i] = range[i - from];
+
+        int middle = (from + to) >>> 1;
+        split(points, from, middle, (axis + 1) % 3);
+        split(points, middle + 1, to, (axis + 1) % 3);
+    }
+
+    // Libraries found so far as a max-heap on squared chord length, so the farthest is replaced first
+    private final class Search {
+
+        final double[] point;
+        final int capacity;
+        final int[] found;
+        final double[] distances;
+        int size;
+
+        Search(double[] point, int capacity) {
+            this.point = point;
+            this.capacity = capacity;
+            found = new int[capacity];
+            distances = new double[capacity];
+        }
+
+        void nearest(int from, int to, int axis) {
+            if (from >= to) return;
+            int middle = (from + to) >>> 1;
+            double distance = squaredDistance(middle);
+            if (size < capacity) push(middle, distance);
+            else if (distance < distances[0]) replaceFarthest(middle, distance);
+
+            double offset = offset(middle, axis);
+            int next = (axis + 1) % 3;
+            if (offset < 0) nearest(from, middle, next);
+            else nearest(middle + 1, to, next);
+            if (size < capacity || offset * offset < distances[0]) {
+                if (offset < 0) nearest(middle + 1, to, next);
+                else nearest(from, middle, next);
+            }
+        }
+
+        void within(int from, int to, int axis, double limit) {
+            if (from >= to) return;
+            int middle = (from + to) >>> 1;
+            double distance = squaredDistance(middle);
+            if (distance <= limit) push(middle, distance);
+
+            double offset = offset(middle, axis);
+            int next = (axis + 1) % 3;
+            if (offset < 0 || offset * offset <= limit) within(from, middle, next, limit);
+            if (offset >= 0 || offset * offset <= limit) within(middle + 1, to, next, limit);
+        }
+
+        // Ids of the libraries found, closest first
+        int[] sorted() {
+            int[] byDistance = new int[size];
+            while (size > 0) {
+                byDistance[size - 1] = ids[found[0]];
+                size--;
+                replaceFarthest(found[size], distances[size]);
+            }
+            return byDistance;
+        }
+
+        private double squaredDistance(int position) {
+            double dx = x[position] - point[0], dy = y[position] - point[1], dz = z[position] - point[2];
+            return dx * dx + dy * dy + dz * dz;
+        }
+
+        // Signed distance from the splitting plane of the position to the point
+        private double offset(int position, int axis) {
+            return point[axis] - (axis == 0 ? x[position] : axis == 1 ? y[position] : z[position]);
+        }
+
+        private void push(int position, double distance) {
+            int child = size++;
+            while (child > 0) {
+                int parent = (child - 1) / 2;
+                if (distances[parent] >= distance) break;
+                found[child] = found[parent];
+                distances[child] = distances[parent];
+                child = parent;
+            }
+            found[child] = position;
+            distances[child] = distance;
+        }
+
+        private void replaceFarthest(int position, double distance) {
+            int parent = 0;
+            while (true) {
+                int child = 2 * parent + 1;
+                if (child >= size) break;
+                if (child + 1 < size && distances[child + 1] > distances[child]) child++;
+                if (distances[child] <= distance) break;
+                found[parent] = found[child];
+                distances[parent] = distances[child];
+                parent = child;
+            }
+            found[parent] = position;
+            distances[parent] = distance;
+        }
+    }
+}
+
+// Result of the in-memory engine: rows picked from a table, or from a
+// grouping, and how each labelled column reads its value from a row.
+// Values are Integer, Long or BigDecimal where the SQL column is an
+// integer, a numeric(18,0) or a wider numeric
+final class MemoryRows implements ReportRows {
+
+    @FunctionalInterface
+    interface Cell {
+        Object value(int row);
+    }
+
+    private final int[] rows;
+    private final String[] columns;
+    private final Cell[] cells;
+    private int cursor = -1;
+    private boolean wasNull;
+
+    public MemoryRows(int[] rows, String[] columns, Cell... cells) {
+        this.rows = rows;
+        this.columns = columns;
+        this.cells = cells;
+    }
+
+    public static MemoryRows of(List<Object[]> records, String... columns) {
+        int[] rows = new int[records.size()];
+        for (int i = 0; i < rows.length; i++) rows[i] = i;
+
+        Cell[] cells = new Cell[columns.length];
+        for (int i = 0; i < cells.length; i++) {
+            int column = i;
+            cells[i] = row -> records.get(row)[column];
+        }
+        return new MemoryRows(rows, columns, cells);
+    }
+
+    @Override
+    public String[] columns() {
+        return columns.clone();
+    }
+
+    @Override
+    public boolean next() {
+        return ++cursor < rows.length;
+    }
+
+    @Override
+    public int size() {
+        return rows.length;
+    }
+
+    @Override
+    public void seek(int row) {
+        cursor = row - 1;
+    }
+
+    // The kind of a column is the one of its first value that is not null
+    @Override
+    public ResultColumns.Kind[] kinds() {
+        ResultColumns.Kind[] kinds = new ResultColumns.Kind[cells.length];
+        for (int i = 0; i < kinds.length; i++) {
+            Object value = null;
+            for (int j = 0; j < rows.length && value == null; j++) value = cells[i].value(rows[j]);
+
+            if (value instanceof Integer) kinds[i] = ResultColumns.Kind.INT;
+            else if (value instanceof Long) kinds[i] = ResultColumns.Kind.LONG;
+            else if (value instanceof Double) kinds[i] = ResultColumns.Kind.DOUBLE;
+            else if (value instanceof BigDecimal) kinds[i] = ResultColumns.Kind.DECIMAL;
+            else kinds[i] = ResultColumns.Kind.STRING;
+        }
+        return kinds;
+    }
+
+    @Override
+    public String getString(String column) {
+        return getString(position(column));
+    }
+
+    @Override
+    public int getInt(String column) {
+        return getInt(position(column));
+    }
+
+    @Override
+    public long getLong(String column) {
+        return getLong(position(column));
+    }
+
+    @Override
+    public double getDouble(String column) {
+        return getDouble(position(column));
+    }
+
+    @Override
+    public BigDecimal getBigDecimal(String column) {
+        return getBigDecimal(position(column));
+    }
+
+    @Override
+    public String getString(int position) {
+        Object value = value(position);
+        return value == null ? null : value.toString();
+    }
+
+    @Override
+    public int getInt(int position) {
+        Object value = value(position);
+        return value == null ? 0 : ((Number) value).intValue();
+    }
+
+    @Override
+    public long getLong(int position) {
+        Object value = value(position);
+        return value == null ? 0 : ((Number) value).longValue();
+    }
+
+    @Override
+    public double getDouble(int position) {
+        Object value = value(position);
+        return value == null ? 0 : ((Number) value).doubleValue();
+    }
+
+    @Override
+    public BigDecimal getBigDecimal(int position) {
+        Object value = value(position);
+        if (value == null || value instanceof BigDecimal) return (BigDecimal) value;
+        return value instanceof Double ? BigDecimal.valueOf((Double) value) : BigDecimal.valueOf(((Number) value).longValue());
+    }
+
+    @Override
+    public boolean wasNull() {
+        return wasNull;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private int position(String column) {
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i].equals(column)) return i + 1;
+        }
+        throw new IllegalArgumentException("No column " + column);
+    }
+
+    private Object value(int position) {
+        Object value = cells[position - 1].value(rows[cursor]);
+        wasNull = value == null;
+        return value;
+    }
+}
+
+// Data
+final class DbLoader {
+
+    // Loads that changed any table, so data held from the tables can tell it is stale
+    private static final AtomicLong RELOADS = new AtomicLong();
+
+    private ConnectionPool pool;
+    private TableSeedersRunner runner;
+    private SeedOptions options;
+    
+    private DbLoader(ConnectionPool pool, SeedOptions options) {
+        this.pool = pool;
+        this.options = options;
+        this.runner = new TableSeedersRunner(pool, options);
+    }
+
+    public static DbLoader up(ConnectionPool pool, SeedOptions options) {
+        return new DbLoader(pool, options);
+    }
+
+    public static long reloads() {
+        return RELOADS.get();
+    }
+
+    public void run() {
+        boolean created = createTablesIfAbsent();
+
+        // Only tables whose source files changed since they were last seeded are loaded
+        Map<String, SourceFingerprint> fingerprints = SourceFingerprint.ofAll(runner.sources(), options.parallelism());
+        Map<String, SourceFingerprint> stale = staleTables(fingerprints, created);
+
+        if (stale.isEmpty()) {
+            System.out.println("Every table is up to date with its source files");
+            buildIndexes();
+            return;
+        }
+
+        // Indexes are rebuilt once the rows are in, not maintained row by row
+        dropIndexes(stale.keySet());
+        Map<String, Long> seeded = runner.run(stale);
+        recordManifest(seeded, fingerprints);
+        RELOADS.incrementAndGet();
+        buildIndexes();
+        System.out.println(pool.summary());
+    }
+
+    private void dropIndexes(Set<String> tables) {
+        if (!options.indexes()) return;
+        try (Connection connection = pool.borrow()) {
+            ReportIndexes.drop(connection, tables);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void buildIndexes() {
+        if (!options.indexes()) return;
+        try (Connection connection = pool.borrow()) {
+            ReportIndexes.build(connection);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private boolean createTablesIfAbsent() {
+        try (Connection connection = pool.borrow()) {
+            ResultSet tables = connection
+                .getMetaData()
+                .getTables(null, null, Table.T_LIBRARIES, null);
+            boolean created = !tables.next();
+
+            Statement command = connection.createStatement();
+            if (created) {
+                String[] sql = SqlReader.read("command.sql");
+                for(int i = 0; i < sql.length; i++) {
+                    if(sql[i].trim().equals("")) continue;
+                    command.executeUpdate(sql[i]);
+                }
+            }
+
+            command.executeUpdate(SqlSeedManifest.CREATE);
+            command.executeUpdate(SqlSeedCheckpoint.CREATE);
+            if (created) {
+                command.executeUpdate(SqlSeedManifest.CLEAR);
+                command.executeUpdate(SqlSeedCheckpoint.CLEAR);
+            } else {
+                widenCoordinates(command);
+            }
+            return created;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // Coordinates were whole degrees before they became float columns; the
+    // libraries are reseeded to bring back their decimals
+    private void widenCoordinates(Statement command) throws SQLException {
+        try (ResultSet numeric = command.executeQuery(SqlSchemaUpgrade.COORDINATES_NUMERIC)) {
+            if (!numeric.next()) return;
+        }
+        command.executeUpdate(SqlSchemaUpgrade.WIDEN_LATITUDE);
+        command.executeUpdate(SqlSchemaUpgrade.WIDEN_LONGITUDE);
+        try (PreparedStatement forget = command.getConnection().prepareStatement(SqlSeedManifest.DELETE)) {
+            forget.setString(1, Table.T_LIBRARIES);
+            forget.executeUpdate();
+        }
+        System.out.println("Widened the libraries' coordinates to float, the libraries will be reseeded");
+    }
+
+    private Map<String, SourceFingerprint> staleTables(Map<String, SourceFingerprint> fingerprints, boolean created) {
+        Map<String, SourceFingerprint> stale = new HashMap<>(fingerprints);
+        if (created) return stale;
+
+        try (Connection connection = pool.borrow()) {
+            Statement selection = connection.createStatement();
+            ResultSet manifest = selection.executeQuery(SqlSeedManifest.SELECT);
+            while (manifest.next()) {
+                SourceFingerprint fingerprint = fingerprints.get(manifest.getString("table_name"));
+                if (fingerprint != null && fingerprint.matches(manifest.getLong("file_size"), manifest.getString("checksum"))) {
+                    stale.remove(manifest.getString("table_name"));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+
+        return stale;
+    }
+
+    private void recordManifest(Map<String, Long> seeded, Map<String, SourceFingerprint> fingerprints) {
+        try (Connection connection = pool.borrow()) {
+            connection.setAutoCommit(false);
+            PreparedStatement deletion = connection.prepareStatement(SqlSeedManifest.DELETE);
+            PreparedStatement insertion = connection.prepareStatement(SqlSeedManifest.INSERT);
+
+            for (Map.Entry<String, Long> entry : seeded.entrySet()) {
+                SourceFingerprint fingerprint = fingerprints.get(entry.getKey());
+                deletion.setString(1, entry.getKey());
+                deletion.addBatch();
+                insertion.setString(1, entry.getKey());
+                insertion.setString(2, fingerprint.files);
+                insertion.setLong(3, fingerprint.size);
+                insertion.setString(4, fingerprint.checksum);
+                insertion.setLong(5, entry.getValue());
+                insertion.addBatch();
+            }
+
+            deletion.executeBatch();
+            insertion.executeBatch();
+            connection.commit();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
+
+// Secondary indexes for the report joins and sorts, built after the tables
+// are loaded. The totals the reports sort by become computed columns, so
+// they can be indexed; the reports' own expressions are matched to them
+final class ReportIndexes {
+
+    private static final String INDEX_EXISTS = "select 1 from sys.indexes where name = ? and object_id = object_id(?)";
+    private static final String COLUMN_EXISTS = "select col_length(?, ?)";
+
+    // table, computed column, expression
+    private static final String[][] SORT_KEYS = {
+        { Table.T_OPERATING_REVENUES, "operating_revenue_total", "local_government_operating_revenue + state_government_operating_revenue + federal_government_operating_revenue + other_operating_revenue" },
+        { Table.T_CAPITAL_REVENUES, "capital_revenue_total", "local_government_capital_revenue + state_government_capital_revenue + federal_government_capital_revenue + other_capital_revenue" },
+        { Table.T_COLLECTION_EXPENDITURES, "collection_expenditure_total", "print_collection_expenditures + digital_collection_expenditures + other_collection_expenditures" },
+        { Table.T_DATABASES_COUNTS, "databases_total", "local_cooperative_agreements + state_licensed_databases" },
+        { Table.T_STAFF_MEMBERS_COUNTS, "staff_total", "librarians + employees" },
+        { Table.T_EMPLOYEE_EXPENDITURES, "employee_expenditure_total", "salaries + benefits" }
+    };
+
+    // name, table, key columns, included columns. Text columns cannot be included
+    private static final String[][] INDEXES = {
+        { "ix_libraries_operating_revenue_id", Table.T_LIBRARIES, "operating_revenue_id", "" },
+        { "ix_libraries_capital_revenue_id", Table.T_LIBRARIES, "capital_revenue_id", "" },
+        { "ix_libraries_collection_expenditure_id", Table.T_LIBRARIES, "collection_expenditure_id", "" },
+        { "ix_libraries_employee_expenditure_id", Table.T_LIBRARIES, "employee_expenditure_id", "" },
+        { "ix_libraries_staff_members_count_id", Table.T_LIBRARIES, "staff_members_count_id", "" },
+        { "ix_libraries_databases_count_id", Table.T_LIBRARIES, "databases_count_id", "" },
+        // County first, since one report joins counties on county_code alone
+        { "ix_libraries_county_state", Table.T_LIBRARIES, "county_code, state_code", "databases_count_id" },
+        { "ix_schools_state_code", Table.T_SCHOOLS, "state_code", "" },
+        { "ix_operating_revenues_total", Table.T_OPERATING_REVENUES, "operating_revenue_total", "local_government_operating_revenue, state_government_operating_revenue, federal_government_operating_revenue, other_operating_revenue" },
+        { "ix_capital_revenues_total", Table.T_CAPITAL_REVENUES, "capital_revenue_total", "local_government_capital_revenue, state_government_capital_revenue, federal_government_capital_revenue, other_capital_revenue" },
+        { "ix_collection_expenditures_total", Table.T_COLLECTION_EXPENDITURES, "collection_expenditure_total", "print_collection_expenditures, digital_collection_expenditures, other_collection_expenditures" },
+        { "ix_databases_counts_total", Table.T_DATABASES_COUNTS, "databases_total", "local_cooperative_agreements, state_licensed_databases" },
+        { "ix_staff_members_counts_total", Table.T_STAFF_MEMBERS_COUNTS, "staff_total", "librarians, employees" },
+        { "ix_employee_expenditures_total", Table.T_EMPLOYEE_EXPENDITURES, "employee_expenditure_total", "salaries, benefits" }
+    };
+
+    // Drops the indexes of the given tables, or of every table when null
+    public static void drop(Connection connection, Set<String> tables) throws SQLException {
+        try (Statement command = connection.createStatement()) {
+            for (String[] index : INDEXES) {
+                if (tables != null && !tables.contains(index[1])) continue;
+                command.executeUpdate("drop index if exists " + index[0] + " on " + index[1]);
+            }
+        }
+    }
+
+    // Creates the missing computed columns and indexes, timing each build
+    public static void build(Connection connection) throws SQLException {
+        long start = System.nanoTime();
+        int built = 0;
+
+        try (Statement command = connection.createStatement()) {
+            for (String[] key : SORT_KEYS) {
+                if (!columnExists(connection, key[0], key[1])) {
+                    command.executeUpdate("alter table " + key[0] + " add " + key[1] + " as (" + key[2] + ")");
+                }
+            }
+
+            for (String[] index : INDEXES) {
+                if (indexExists(connection, index[0], index[1])) continue;
+
+                long building = System.nanoTime();
+                command.executeUpdate("create index " + index[0] + " on " + index[1] + "(" + index[2] + ")"
+                    + (index[3].isEmpty() ? "" : " include (" + index[3] + ")"));
+                System.out.println(String.format("---- + %-40s %8.3f s", index[0], (System.nanoTime() - building) / 1e9));
+                built++;
+            }
+        }
+
+        if (built > 0) System.out.println(String.format("Built %d indexes in %.3f s", built, (System.nanoTime() - start) / 1e9));
+    }
+
+    private static boolean indexExists(Connection connection, String index, String table) throws SQLException {
+        try (PreparedStatement selection = connection.prepareStatement(INDEX_EXISTS)) {
+            selection.setString(1, index);
+            selection.setString(2, table);
+            try (ResultSet result = selection.executeQuery()) {
+                return result.next();
+            }
+        }
+    }
+
+    private static boolean columnExists(Connection connection, String table, String column) throws SQLException {
+        try (PreparedStatement selection = connection.prepareStatement(COLUMN_EXISTS)) {
+            selection.setString(1, table);
+            selection.setString(2, column);
+            try (ResultSet result = selection.executeQuery()) {
+                return result.next() && result.getObject(1) != null;
+            }
+        }
+    }
+}
+
+// Total size and SHA-256 of the source files of one table
+final class SourceFingerprint {
+
+    private static final int READ_BYTES = 1024 * 1024;
+
+    final String files;
+    final long size;
+    final String checksum;
+
+    private SourceFingerprint(String files, long size, String checksum) {
+        this.files = files;
+        this.size = size;
+        this.checksum = checksum;
+    }
+
+    public static SourceFingerprint of(List<String> files) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BYTES);
+        long size = 0;
+        for (String file : files) {
+            try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+                while (channel.read(buffer) != -1) {
+                    buffer.flip();
+                    size += buffer.remaining();
+                    digest.update(buffer);
+                    buffer.clear();
+                }
+            }
+        }
+
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+
+        return new SourceFingerprint(String.join(Delimiter.COMMA, files), size, hex.toString());
+    }
+
+    // Table -> fingerprint, hashing the tables' sources concurrently
+    public static Map<String, SourceFingerprint> ofAll(Map<String, List<String>> sources, int parallelism) {
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        Map<String, Future<SourceFingerprint>> hashing = new HashMap<>();
+        Map<String, SourceFingerprint> fingerprints = new HashMap<>();
+
+        try {
+            sources.forEach((table, files) -> hashing.put(table, executor.submit(() -> of(files))));
+            for (Map.Entry<String, Future<SourceFingerprint>> entry : hashing.entrySet()) {
+                fingerprints.put(entry.getKey(), entry.getValue().get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+
+        return fingerprints;
+    }
+
+    public boolean matches(long size, String checksum) {
+        return this.size == size && this.checksum.equals(checksum);
+    }
+}
+
+// Db Seeders
+final class TableSeedersRunner {
+    
+    private final Map<String, TableSeeder> registry = new LinkedHashMap<>();
+    private final Map<String, Set<String>> dependencies;
+    private final int parallelism;
+    private final SeedProgress progress;
+
+    public TableSeedersRunner(ConnectionPool pool, SeedOptions options) {
+        this.dependencies = TableDependencies.read("command.sql");
+        this.parallelism = options.parallelism();
+        this.progress = new SeedProgress(options.progressMillis(), options.metricsFile());
+        registerTableSeeders(pool, options);
+    }
+
+    private void registerTableSeeders(ConnectionPool pool, SeedOptions options) {
+        registry.put(Table.T_STATES, new MappedTableSeeder(pool, TableMappings.STATES));
+        registry.put(Table.T_SCHOOLS, new SchoolsSeeder(pool, "schools.txt", Table.T_SCHOOLS));
+        registry.put(Table.T_COUNTIES, new MappedTableSeeder(pool, TableMappings.COUNTIES));
+        registry.put(Table.T_OPERATING_REVENUES, new MappedTableSeeder(pool, TableMappings.OPERATING_REVENUES));
+        registry.put(Table.T_CAPITAL_REVENUES, new MappedTableSeeder(pool, TableMappings.CAPITAL_REVENUES));
+        registry.put(Table.T_COLLECTION_EXPENDITURES, new MappedTableSeeder(pool, TableMappings.COLLECTION_EXPENDITURES));
+        registry.put(Table.T_EMPLOYEE_EXPENDITURES, new MappedTableSeeder(pool, TableMappings.EMPLOYEE_EXPENDITURES));
+        registry.put(Table.T_STAFF_MEMBERS_COUNTS, new MappedTableSeeder(pool, TableMappings.STAFF_MEMBERS_COUNTS));
+        registry.put(Table.T_DATABASES_COUNTS, new MappedTableSeeder(pool, TableMappings.DATABASES_COUNTS));
+        registry.put(Table.T_LIBRARIES, new MappedTableSeeder(pool, TableMappings.LIBRARIES));
+        registry.values().forEach(seeder -> seeder.withOptions(options).withProgress(progress));
+    }
+
+    public Map<String, List<String>> sources() {
+        Map<String, List<String>> sources = new HashMap<>();
+        registry.forEach((table, seeder) -> sources.put(table, seeder.sources()));
+        return sources;
+    }
+
+    // Seeds the stale tables and returns the source row count of each one seeded successfully
+    public Map<String, Long> run(Map<String, SourceFingerprint> stale) {
+        System.out.println("We are loading the best data for you !");
+        System.out.println("------ ------ ------ ------ ------ ------ ------ ------ ------ ------");
+
+        // A seeder starts as soon as every table it references is seeded,
+        // so the tables without foreign keys overlap each other
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        Map<String, CompletableFuture<Void>> seeding = new HashMap<>();
+        Map<String, Long> seeded = new ConcurrentHashMap<>();
+        progress.start();
+
+        try {
+            for (String table : registry.keySet()) {
+                schedule(table, stale, seeded, seeding, new HashSet<>(), executor);
+            }
+
+            CompletableFuture
+                .allOf(seeding.values().toArray(CompletableFuture[]::new))
+                .join();
+        } catch (CompletionException e) {
+            e.getCause().printStackTrace();
+        } finally {
+            executor.shutdown();
+            progress.stop();
+        }
+
+        // Rows gone from a source are deleted from referencing tables before referenced ones
+        List<String> order = new ArrayList<>(seeding.keySet());
+        order.sort(Comparator.comparingInt(this::depth).reversed());
+        for (String table : order) {
+            if (!seeded.containsKey(table)) continue;
+            try {
+                registry.get(table).prune();
+            } catch (RuntimeException e) {
+                seeded.remove(table);
+                e.printStackTrace();
+            }
+        }
+
+        return seeded;
+    }
+
+    private int depth(String table) {
+        int depth = 0;
+        for (String dependency : dependencies.getOrDefault(table, Collections.emptySet())) {
+            if (registry.containsKey(dependency)) depth = Math.max(depth, depth(dependency) + 1);
+        }
+        return depth;
+    }
+
+    private CompletableFuture<Void> schedule(String table, Map<String, SourceFingerprint> stale, Map<String, Long> seeded, Map<String, CompletableFuture<Void>> seeding, Set<String> visiting, ExecutorService executor) {
+        CompletableFuture<Void> scheduled = seeding.get(table);
+        if (scheduled != null) return scheduled;
+
+        if (!visiting.add(table)) throw new IllegalStateException("Cyclic foreign keys on table " + table);
+
+        CompletableFuture<?>[] prerequisites = dependencies
+            .getOrDefault(table, Collections.emptySet())
+            .stream()
+            .filter(registry::containsKey)
+            .map(dependency -> schedule(dependency, stale, seeded, seeding, visiting, executor))
+            .toArray(CompletableFuture[]::new);
+
+        scheduled = CompletableFuture
+            .allOf(prerequisites)
+            .thenRunAsync(() -> {
+                if (stale.containsKey(table)) seeded.put(table, seedTimed(table, stale.get(table)));
+            }, executor);
+
+        seeding.put(table, scheduled);
+        visiting.remove(table);
+        return scheduled;
+    }
+
+    private long seedTimed(String table, SourceFingerprint fingerprint) {
+        long start = System.nanoTime();
+        long rows = registry.get(table).seed(fingerprint);
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("---- o %-24s %8.3f s", table, elapsed));
+        return rows;
+    }
+}
+
+final class TableDependencies {
+
+    private static final Pattern CREATE_TABLE = Pattern.compile("create\\s+table\\s+(\\w+)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern REFERENCES = Pattern.compile("references\\s+(\\w+)", Pattern.CASE_INSENSITIVE);
+
+    // Table -> tables its foreign keys reference, as declared in the schema script
+    public static Map<String, Set<String>> read(String file) {
+        Map<String, Set<String>> dependencies = new HashMap<>();
+
+        for (String statement : SqlReader.read(file)) {
+            Matcher creation = CREATE_TABLE.matcher(statement);
+            if (!creation.find()) continue;
+
+            String table = creation.group(1).toLowerCase();
+            Set<String> referenced = new HashSet<>();
+            Matcher reference = REFERENCES.matcher(statement);
+            while (reference.find()) {
+                String target = reference.group(1).toLowerCase();
+                if (!target.equals(table)) referenced.add(target);
+            }
+            dependencies.put(table, referenced);
+        }
+
+        return dependencies;
+    }
+}
+
+abstract class TableSeeder {
+
+    private static final String STAGING_PREFIX = "seed_staging_";
+
+    protected final ConnectionPool pool;
+    protected final String file, table;
+    private final String[] columns;
+    private SeedOptions options = SeedOptions.DEFAULT;
+    private SeedProgress progress = SeedProgress.NONE;
+    private boolean staged;
+
+    public TableSeeder(ConnectionPool pool, String file, String table, String insertion) {
+        this.pool = pool;
+        this.file = file;
+        this.table = table;
+        this.columns = SqlInsertion.columns(insertion);
+    }
+
+    public TableSeeder withOptions(SeedOptions options) {
+        this.options = options;
+        return this;
+    }
+
+    public TableSeeder withProgress(SeedProgress progress) {
+        this.progress = progress;
+        return this;
+    }
+
+    // Files whose content decides the rows of the table
+    public List<String> sources() {
+        return Collections.singletonList(source());
+    }
+
+    // Path of the data file in the configured source directory
+    protected String source() {
+        return SourceTokenizer.resolve(Paths.get(options.sourceDir(), file).toString());
+    }
+
+    // Loads an empty table directly. A table that already holds rows gets
+    // the source loaded into a staging table and merged in, so only rows
+    // that differ are written. Returns the number of source rows
+    public long seed(SourceFingerprint fingerprint) {
+        try (Connection connection = pool.borrow()) {
+            String staging = STAGING_PREFIX + table;
+
+            // A checkpoint left by an interrupted load of the same source is continued
+            SeedCheckpoint checkpoint = SeedCheckpoint.read(connection, table);
+            if (checkpoint != null && !checkpoint.checksum.equals(fingerprint.checksum)) {
+                SeedCheckpoint.clear(connection, table);
+                checkpoint = null;
+            }
+
+            boolean merging;
+            if (checkpoint != null) {
+                merging = checkpoint.target.equals(staging);
+                System.out.println("Resuming " + checkpoint.target + " at byte " + checkpoint.offset + " after key " + checkpoint.lastKey);
+            } else {
+                merging = isTableSeeded(connection, table);
+                if (merging) {
+                    try (Statement command = connection.createStatement()) {
+                        command.executeUpdate("drop table if exists " + staging);
+                        command.executeUpdate("select " + String.join(", ", columns) + " into " + staging + " from " + table + " where 1 = 0");
+                    }
+                }
+            }
+
+            long rows = load(connection, merging ? staging : table, fingerprint, checkpoint);
+            if (!merging) return rows;
+            staged = true;
+
+            try (Statement command = connection.createStatement()) {
+                command.executeUpdate(merge(connection, staging));
+            }
+            return rows;
+        }
+        catch (SQLException | IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // Deletes the rows missing from the staged source, once every table is merged
+    public void prune() {
+        if (!staged) return;
+
+        String staging = STAGING_PREFIX + table;
+        String[] keys = keys();
+        StringBuilder matching = new StringBuilder();
+        for (int i = 0; i < keys.length; i++) {
+            if (i > 0) matching.append(" and ");
+            matching.append("target.").append(keys[i]).append(" = source.").append(keys[i]);
+        }
+
+        try (Connection connection = pool.borrow(); Statement command = connection.createStatement()) {
+            command.executeUpdate(
+                "delete target from " + table + " as target " +
+                "where not exists (select 1 from " + staging + " as source where " + matching + ")");
+            command.executeUpdate("drop table " + staging);
+            staged = false;
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    protected abstract void runBatch(ChunkedBatch batch) throws SQLException, IOException;
+
+    // Opens the source at the offset a resumed load continues from, or past its header line
+    protected SourceTokenizer openSource(ChunkedBatch batch, byte delimiter) throws IOException {
+        SourceTokenizer cells = SourceTokenizer.open(source(), delimiter, batch.resumeOffset());
+        batch.metrics().source(cells::size, batch.resumeOffset());
+        if (batch.resumeOffset() == 0) cells.nextRecord();
+        return cells;
+    }
+
+    // Primary key columns
+    protected String[] keys() {
+        return new String[] { columns[0] };
+    }
+
+    protected boolean isTableSeeded(Connection connection, String table) throws SQLException {
+        Statement selection = connection.createStatement();
+        ResultSet result = selection.executeQuery("select * from " + table);
+        return result.next();
+    }
+
+    // Parses on this thread while seed.writers writers load the chunks on their own connections
+    private long load(Connection connection, String target, SourceFingerprint fingerprint, SeedCheckpoint checkpoint) throws SQLException, IOException {
+        int writers = options.writers();
+
+        // Concurrent writers must not escalate to table locks, since each
+        // waits for the writers of earlier chunks to commit first
+        boolean unescalated = writers > 1 && pool.url().startsWith("jdbc:sqlserver:");
+        if (unescalated) lockEscalation(connection, target, "disable");
+
+        SeedMetrics metrics = progress.track(target);
+        try {
+            ChunkedBatch batch = new ChunkedBatch(options, columns.length, checkpoint, splits(checkpoint), metrics, () -> {
+                Connection writing = pool.borrow();
+                try {
+                    writing.setAutoCommit(false);
+                    SeedSink sink = SeedSinks.open(options.sink(), pool.url(), writing, target, columns, writers == 1);
+                    CheckpointWriter checkpoints = new CheckpointWriter(writing, table, target, fingerprint.checksum);
+                    return new SeedWriter(writing, sink, checkpoints);
+                } catch (SQLException e) {
+                    writing.close();
+                    throw e;
+                }
+            });
+
+            try {
+                runBatch(batch);
+                batch.finish();
+            } catch (SQLException | IOException | RuntimeException e) {
+                batch.abort(e);
+                throw e;
+            }
+
+            System.out.println(metrics.summary() + " | " + options.writers() + " writer(s), chunks of " + options.chunkPolicy());
+            return batch.rows();
+        } finally {
+            progress.done(metrics);
+            if (unescalated) lockEscalation(connection, target, "table");
+        }
+    }
+
+    // Large plain sources of seeders that can parse ranges are split across
+    // seed.parse.threads, unless a checkpointed load is being resumed
+    private int splits(SeedCheckpoint checkpoint) throws IOException {
+        String source = source();
+        if (!splittable() || checkpoint != null || options.parseThreads() < 2 || source.endsWith(SourceTokenizer.GZIP_SUFFIX)) return 1;
+        return Files.size(Paths.get(source)) >= options.splitBytes() ? options.parseThreads() : 1;
+    }
+
+    // Whether rows parse independently of each other, so ranges of the source can be parsed apart
+    protected boolean splittable() {
+        return false;
+    }
+
+    private void lockEscalation(Connection connection, String target, String mode) throws SQLException {
+        try (Statement command = connection.createStatement()) {
+            command.executeUpdate("alter table " + target + " set (lock_escalation = " + mode + ")");
+        }
+    }
+
+    private String merge(Connection connection, String staging) throws SQLException {
+        ColumnMetadata metadata = ColumnMetadata.probe(connection, table, columns);
+        Set<String> keys = new HashSet<>(Arrays.asList(keys()));
+
+        List<String> matching = new ArrayList<>(), sourceValues = new ArrayList<>(), targetValues = new ArrayList<>();
+        List<String> updates = new ArrayList<>(), inserted = new ArrayList<>();
+        for (int i = 0; i < columns.length; i++) {
+            String column = columns[i];
+            inserted.add("source." + column);
+            if (keys.contains(column)) {
+                matching.add("target." + column + " = source." + column);
+                continue;
+            }
+
+            // text columns cannot be compared as they are
+            boolean text = metadata.types[i] == Types.LONGVARCHAR || metadata.types[i] == Types.LONGNVARCHAR || metadata.types[i] == Types.CLOB;
+            sourceValues.add(text ? "cast(source." + column + " as varchar(max))" : "source." + column);
+            targetValues.add(text ? "cast(target." + column + " as varchar(max))" : "target." + column);
+            updates.add(column + " = source." + column);
+        }
+
+        String merge = "merge into " + table + " as target " +
+            "using " + staging + " as source " +
+            "on " + String.join(" and ", matching) + " ";
+        if (!updates.isEmpty()) {
+            merge += "when matched and exists (select " + String.join(", ", sourceValues) + " except select " + String.join(", ", targetValues) + ") " +
+                "then update set " + String.join(", ", updates) + " ";
+        }
+        return merge + "when not matched by target " +
+            "then insert (" + String.join(", ", columns) + ") values (" + String.join(", ", inserted) + ");";
+    }
+}
+
+// Types of a table's columns as reported by the database
+final class ColumnMetadata {
+
+    final int[] types, precisions, scales;
+
+    private ColumnMetadata(int columns) {
+        this.types = new int[columns];
+        this.precisions = new int[columns];
+        this.scales = new int[columns];
+    }
+
+    public static ColumnMetadata probe(Connection connection, String table, String[] columns) throws SQLException {
+        ColumnMetadata probed = new ColumnMetadata(columns.length);
+        String probe = "select " + String.join(",", columns) + " from " + table + " where 1 = 0";
+
+        try (Statement statement = connection.createStatement(); ResultSet empty = statement.executeQuery(probe)) {
+            ResultSetMetaData metadata = empty.getMetaData();
+            for (int i = 0; i < columns.length; i++) {
+                probed.types[i] = metadata.getColumnType(i + 1);
+                probed.precisions[i] = metadata.getPrecision(i + 1);
+                probed.scales[i] = metadata.getScale(i + 1);
+            }
+        }
+
+        return probed;
+    }
+}
+
+// Rows and bytes after which a batch is executed and committed
+final class ChunkPolicy {
+
+    public static final ChunkPolicy DEFAULT = new ChunkPolicy(1000, 4 * 1024 * 1024);
+
+    final int maxRows;
+    final long maxBytes;
+
+    public ChunkPolicy(int maxRows, long maxBytes) {
+        this.maxRows = maxRows <= 0 ? Integer.MAX_VALUE : maxRows;
+        this.maxBytes = maxBytes <= 0 ? Long.MAX_VALUE : maxBytes;
+    }
+
+    @Override
+    public String toString() {
+        return (maxRows == Integer.MAX_VALUE ? "unbounded" : String.valueOf(maxRows)) + " rows / "
+            + (maxBytes == Long.MAX_VALUE ? "unbounded" : String.valueOf(maxBytes)) + " bytes";
+    }
+}
+
+// Parsing stage of a table load. Seeders bind each row to sink() and
+// call add(), which fills preallocated blocks of a bounded ring. Writers
+// drain the blocks into their own sinks, one transaction per block, and
+// commit in block order so each commit can checkpoint how far the source
+// is loaded. A full ring makes the parser wait for the writers.
+// A batch with several splits instead parses line-aligned ranges of the
+// source on a fork/join pool, each range filling blocks of its own. Those
+// commit in any order and without checkpoints
+final class ChunkedBatch {
+
+    private static final int MAX_BLOCK_ROWS = 1 << 16;
+
+    @FunctionalInterface
+    interface WriterOpener {
+        SeedWriter open() throws SQLException;
+    }
+
+    @FunctionalInterface
+    interface RangeParser {
+        void parse(SourceTokenizer cells, ChunkedBatch range) throws SQLException, IOException;
+    }
+
+    private final ChunkPolicy policy;
+    private final int blockRows;
+    private final int splits;
+    private final RowRing ring;
+    private final CommitSequencer sequencer;
+    private final List<SeedWriter> writers = new ArrayList<>();
+    private final List<Future<Void>> draining = new ArrayList<>();
+    private final ExecutorService executor;
+    private final long resumeOffset;
+    private final String resumeKey;
+    private final long resumedRows;
+    private final SeedMetrics metrics;
+
+    private final AtomicLong sequence, rows;
+    private RowBlock current;
+
+    private String textKey;
+    private int intKey;
+    private boolean hasIntKey;
+
+    private final SeedSink filling = new SeedSink() {
+
+        @Override
+        public void setInt(int column, int value) {
+            current.setInt(column, value);
+        }
+
+        @Override
+        public void setDouble(int column, double value) {
+            current.setDouble(column, value);
+        }
+
+        @Override
+        public void setString(int column, String value) {
+            current.setString(column, value);
+        }
+
+        @Override
+        public void endRow() { }
+
+        @Override
+        public void flush() { }
+
+        @Override
+        public void discard() { }
+
+        @Override
+        public void finish() { }
+
+        @Override
+        public void close() { }
+    };
+
+    public ChunkedBatch(SeedOptions options, int columns, SeedCheckpoint resumed, int splits, SeedMetrics metrics, WriterOpener opener) throws SQLException {
+        this.policy = options.chunkPolicy();
+        this.metrics = metrics;
+        this.splits = splits;
+        this.blockRows = Math.min(policy.maxRows, MAX_BLOCK_ROWS);
+        this.ring = new RowRing(Math.max(options.ringBlocks(), splits + options.writers() + 1), blockRows, columns);
+        this.sequencer = new CommitSequencer(splits == 1);
+        this.sequence = new AtomicLong();
+        this.rows = new AtomicLong();
+        this.resumeOffset = resumed == null ? 0 : resumed.offset;
+        this.resumeKey = resumed == null ? null : resumed.lastKey;
+        this.resumedRows = resumed == null ? 0 : resumed.rows;
+
+        this.executor = Executors.newFixedThreadPool(options.writers());
+        try {
+            for (int i = 0; i < options.writers(); i++) {
+                SeedWriter writer = opener.open();
+                writers.add(writer);
+                draining.add(executor.submit(() -> writer.drain(ring, sequencer, metrics)));
+            }
+        } catch (SQLException e) {
+            abort(e);
+            throw e;
+        }
+
+        this.current = ring.claim();
+    }
+
+    // Producer of one range, feeding the ring and writers of its parent
+    private ChunkedBatch(ChunkedBatch parent) throws SQLException {
+        this.policy = parent.policy;
+        this.metrics = parent.metrics;
+        this.splits = parent.splits;
+        this.blockRows = parent.blockRows;
+        this.ring = parent.ring;
+        this.sequencer = parent.sequencer;
+        this.sequence = parent.sequence;
+        this.rows = parent.rows;
+        this.executor = null;
+        this.resumeOffset = 0;
+        this.resumeKey = null;
+        this.resumedRows = 0;
+        this.current = ring.claim();
+    }
+
+    public SeedSink sink() {
+        return filling;
+    }
+
+    public SeedMetrics metrics() {
+        return metrics;
+    }
+
+    // Source offset to continue from, 0 when the load starts fresh
+    public long resumeOffset() {
+        return resumeOffset;
+    }
+
+    public String resumeKey() {
+        return resumeKey;
+    }
+
+    // Ranges the source is parsed in, 1 when it is parsed front to back
+    public int splits() {
+        return splits;
+    }
+
+    // Parses each line-aligned range of file with parser on its own batch
+    public void parseRanges(String file, byte delimiter, RangeParser parser) throws SQLException, IOException {
+        long[] bounds = SourceTokenizer.split(file, splits);
+        metrics.source(() -> bounds[splits], 0);
+
+        ForkJoinPool pool = new ForkJoinPool(splits);
+        try {
+            pool.invoke(new RangeTask(file, delimiter, bounds, 0, splits, parser));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } catch (RuntimeException e) {
+            if (e.getCause() instanceof SQLException) throw (SQLException) e.getCause();
+            throw e;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private final class RangeTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String file;
+        private final byte delimiter;
+        private final long[] bounds;
+        private final int from, to;
+        private final RangeParser parser;
+
+        RangeTask(String file, byte delimiter, long[] bounds, int from, int to, RangeParser parser) {
+            this.file = file;
+            this.delimiter = delimiter;
+            this.bounds = bounds;
+            this.from = from;
+            this.to = to;
+            this.parser = parser;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(
+                    new RangeTask(file, delimiter, bounds, from, middle, parser),
+                    new RangeTask(file, delimiter, bounds, middle, to, parser));
+                return;
+            }
+
+            try (SourceTokenizer cells = SourceTokenizer.open(file, delimiter, bounds[from], bounds[to])) {
+                if (bounds[from] == 0) cells.nextRecord();
+                ChunkedBatch range = new ChunkedBatch(ChunkedBatch.this);
+                parser.parse(cells, range);
+                range.publishRemaining();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    // Key of the row being added, recorded with the checkpoint of its block
+    public void key(int key) {
+        intKey = key;
+        hasIntKey = true;
+    }
+
+    public void key(String key) {
+        textKey = key;
+    }
+
+    public void add(SourceTokenizer cells) throws SQLException {
+        current.endRow(cells.recordBytes(), cells.offset());
+        if (current.size >= blockRows || current.bytes >= policy.maxBytes) publish();
+    }
+
+    public void finish() throws SQLException {
+        publishRemaining();
+        metrics.parsingDone(ring.producerWaitNanos());
+
+        for (int i = 0; i < writers.size(); i++) ring.publish(RowBlock.END);
+        awaitWriters();
+
+        // Whole-table work runs once, after the last block is committed
+        SeedWriter first = writers.get(0);
+        first.sink.finish();
+        first.checkpoints.clear();
+        first.connection.commit();
+        closeWriters();
+        metrics.finished();
+    }
+
+    public void abort(Exception cause) {
+        ring.abort(cause);
+        sequencer.fail(cause);
+        for (Future<Void> writer : draining) {
+            try {
+                writer.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) { }
+        }
+        closeWriters();
+    }
+
+    private void publishRemaining() throws SQLException {
+        if (current.size > 0) publish();
+        else ring.release(current);
+        current = null;
+    }
+
+    private void publish() throws SQLException {
+        current.lastKey = lastKey();
+        current.sequence = sequence.getAndIncrement();
+        current.rowsThrough = resumedRows + rows.addAndGet(current.size);
+        current.checkpointed = splits == 1;
+        metrics.parsed(current.size, current.bytes);
+
+        ring.publish(current);
+        current = ring.claim();
+    }
+
+    private void awaitWriters() throws SQLException {
+        for (Future<Void> writer : draining) {
+            try {
+                writer.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for the writers", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof SQLException) throw (SQLException) e.getCause();
+                throw new SQLException(e.getCause());
+            }
+        }
+    }
+
+    private void closeWriters() {
+        if (executor.isShutdown()) return;
+        executor.shutdown();
+        for (SeedWriter writer : writers) writer.close();
+    }
+
+    private String lastKey() {
+        if (!hasIntKey) return textKey;
+        return textKey == null ? String.valueOf(intKey) : textKey + Delimiter.TAB + intKey;
+    }
+
+    // Rows of the source in the table, including those of a resumed load
+    public long rows() {
+        return resumedRows + rows.get();
+    }
+}
+
+// One writer stage: its own connection, sink and checkpoints
+final class SeedWriter {
+
+    final Connection connection;
+    final SeedSink sink;
+    final CheckpointWriter checkpoints;
+
+    public SeedWriter(Connection connection, SeedSink sink, CheckpointWriter checkpoints) {
+        this.connection = connection;
+        this.sink = sink;
+        this.checkpoints = checkpoints;
+    }
+
+    public Void drain(RowRing ring, CommitSequencer sequencer, SeedMetrics metrics) throws SQLException {
+        while (true) {
+            long waiting = System.nanoTime();
+            RowBlock block = ring.take();
+            if (block == RowBlock.END) return null;
+
+            long writing = System.nanoTime();
+            metrics.writerIdle(writing - waiting);
+            try {
+                block.replay(sink);
+                sink.flush();
+
+                long ordering = System.nanoTime();
+                sequencer.awaitTurn(block.sequence);
+                long ordered = System.nanoTime();
+
+                if (block.checkpointed) checkpoints.save(block.endOffset, block.lastKey, block.rowsThrough);
+                connection.commit();
+                sequencer.committed(block.sequence);
+
+                metrics.committed(block.size, block.bytes, System.nanoTime() - writing - (ordered - ordering), ordered - ordering);
+            } catch (SQLException | RuntimeException e) {
+                sink.discard();
+                connection.rollback();
+                sequencer.fail(e);
+                ring.abort(e);
+                throw e;
+            }
+
+            ring.release(block);
+        }
+    }
+
+    public void close() {
+        try {
+            checkpoints.close();
+            sink.close();
+            connection.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+}
+
+// Figures of one table load. The parser and the writers update them as
+// blocks move through the ring, and the progress reporter reads them
+// while the load runs. Parse time excludes waiting on a full ring, so it
+// is source reading and parsing; db time is flushing and committing
+final class SeedMetrics {
+
+    final String table;
+    private final long start = System.nanoTime();
+
+    private volatile LongSupplier sourceBytes = () -> 0;
+    private volatile long startOffset, committedBytes;
+    private volatile long rowsParsed, bytesParsed, chunks;
+    private volatile long parseNanos, ringWaitNanos, elapsedNanos;
+
+    private long rowsCommitted, dbNanos, idleNanos, orderingNanos;
+    private long[] chunkNanos = new long[64];
+    private int committedChunks;
+
+    public SeedMetrics(String table) {
+        this.table = table;
+    }
+
+    // Size of a gzip source is only an estimate until it is fully inflated
+    public void source(LongSupplier sourceBytes, long startOffset) {
+        this.sourceBytes = sourceBytes;
+        this.startOffset = startOffset;
+    }
+
+    public synchronized void parsed(int rows, long bytes) {
+        rowsParsed += rows;
+        bytesParsed += bytes;
+        chunks++;
+    }
+
+    public void parsingDone(long ringWaitNanos) {
+        this.ringWaitNanos = ringWaitNanos;
+        // Summed over the parsers of a split source, so it can exceed the wall time
+        this.parseNanos = Math.max(0, System.nanoTime() - start - ringWaitNanos);
+    }
+
+    public synchronized void committed(int rows, long bytes, long nanos, long orderingNanos) {
+        rowsCommitted += rows;
+        dbNanos += nanos;
+        this.orderingNanos += orderingNanos;
+        committedBytes += bytes;
+        recordChunk(nanos);
+    }
+
+    public synchronized void writerIdle(long nanos) {
+        idleNanos += nanos;
+    }
+
+    public void finished() {
+        elapsedNanos = System.nanoTime() - start;
+    }
+
+    // e.g. libraries  42.0%  5.1/12.2 MB  48213 rows/s  ETA 2.4 s
+    public String progress() {
+        long size = sourceBytes.getAsLong();
+        if (size == 0) return table + " starting";
+        long total = size - startOffset, done = committedBytes;
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        double rate = elapsed > 0 ? done / elapsed : 0;
+        String eta = rate > 0 ? String.format("%.1f s", (total - done) / rate) : "-";
+        return String.format("%s %5.1f%% %.1f/%.1f MB %.0f rows/s ETA %s",
+            table, total > 0 ? 100.0 * done / total : 100.0, done / 1e6, total / 1e6,
+            elapsed > 0 ? committedRows() / elapsed : 0, eta);
+    }
+
+    public synchronized String summary() {
+        double elapsed = elapsedSeconds();
+        return String.format(
+            "%s: %d rows (%d bytes) in %d chunks, %.0f rows/s | parse %.3f s, ring wait %.3f s, db %.3f s | chunk ms p50 %.2f p95 %.2f p99 %.2f max %.2f",
+            table, rowsCommitted, bytesParsed, chunks,
+            elapsed > 0 ? rowsCommitted / elapsed : 0,
+            parseNanos / 1e9, ringWaitNanos / 1e9, dbNanos / 1e9,
+            percentile(50), percentile(95), percentile(99), percentile(100));
+    }
+
+    public synchronized String toJson() {
+        double elapsed = elapsedSeconds();
+        return String.format(Locale.ROOT,
+            "{\"table\": \"%s\", \"source_bytes\": %d, \"start_offset\": %d, \"bytes_read\": %d, " +
+            "\"rows_parsed\": %d, \"rows_committed\": %d, \"chunks\": %d, \"elapsed_s\": %.3f, \"rows_per_s\": %.1f, " +
+            "\"parse_s\": %.3f, \"ring_wait_s\": %.3f, \"db_s\": %.3f, \"writer_idle_s\": %.3f, \"commit_order_wait_s\": %.3f, " +
+            "\"chunk_ms\": {\"p50\": %.3f, \"p90\": %.3f, \"p95\": %.3f, \"p99\": %.3f, \"max\": %.3f}}",
+            table, sourceBytes.getAsLong(), startOffset, bytesParsed,
+            rowsParsed, rowsCommitted, chunks, elapsed, elapsed > 0 ? rowsCommitted / elapsed : 0,
+            parseNanos / 1e9, ringWaitNanos / 1e9, dbNanos / 1e9, idleNanos / 1e9, orderingNanos / 1e9,
+            percentile(50), percentile(90), percentile(95), percentile(99), percentile(100));
+    }
+
+    private synchronized long committedRows() {
+        return rowsCommitted;
+    }
+
+    private double elapsedSeconds() {
+        return (elapsedNanos > 0 ? elapsedNanos : System.nanoTime() - start) / 1e9;
+    }
+
+    private void recordChunk(long nanos) {
+        if (committedChunks == chunkNanos.length) chunkNanos = Arrays.copyOf(chunkNanos, committedChunks * 2);
+        chunkNanos[committedChunks++] = nanos;
+    }
+
+    // Nearest-rank percentile of the chunk latencies in milliseconds
+    private double percentile(int percent) {
+        if (committedChunks == 0) return 0;
+        long[] sorted = Arrays.copyOf(chunkNanos, committedChunks);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)] / 1e6;
+    }
+}
+
+// Prints a progress line for the running loads every interval and writes
+// the metrics of every load as JSON when seeding ends
+final class SeedProgress {
+
+    static final SeedProgress NONE = new SeedProgress(0, "");
+
+    private final long intervalMillis;
+    private final String metricsFile;
+    private final Map<String, SeedMetrics> running = new ConcurrentHashMap<>();
+    private final List<SeedMetrics> done = Collections.synchronizedList(new ArrayList<>());
+    private ScheduledExecutorService reporter;
+
+    public SeedProgress(long intervalMillis, String metricsFile) {
+        this.intervalMillis = intervalMillis;
+        this.metricsFile = metricsFile;
+    }
+
+    public SeedMetrics track(String table) {
+        SeedMetrics metrics = new SeedMetrics(table);
+        running.put(table, metrics);
+        return metrics;
+    }
+
+    public void done(SeedMetrics metrics) {
+        running.remove(metrics.table);
+        done.add(metrics);
+    }
+
+    public void start() {
+        if (intervalMillis <= 0) return;
+        reporter = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "seed-progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(this::report, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        if (reporter != null) reporter.shutdownNow();
+        if (metricsFile.isEmpty() || done.isEmpty()) return;
+
+        List<String> tables = new ArrayList<>();
+        synchronized (done) {
+            for (SeedMetrics metrics : done) tables.add("    " + metrics.toJson());
+        }
+        String json = "{\n  \"tables\": [\n" + String.join(",\n", tables) + "\n  ]\n}\n";
+        try {
+            Files.write(Paths.get(metricsFile), json.getBytes(StandardCharsets.UTF_8));
+            System.out.println("Seeding metrics written to " + metricsFile);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void report() {
+        if (running.isEmpty()) return;
+        StringJoiner line = new StringJoiner(" | ", ".... ", "");
+        running.values().forEach(metrics -> line.add(metrics.progress()));
+        System.out.println(line);
+    }
+}
+
+// Lets writers commit their blocks strictly in sequence, or in any order
+// when it is not ordered
+final class CommitSequencer {
+
+    private final boolean ordered;
+    private long next;
+    private Exception failure;
+
+    public CommitSequencer(boolean ordered) {
+        this.ordered = ordered;
+    }
+
+    public synchronized void awaitTurn(long sequence) throws SQLException {
+        while (ordered && next != sequence && failure == null) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting to commit", e);
+            }
+        }
+        if (failure != null) throw new SQLException("An earlier chunk failed", failure);
+    }
+
+    public synchronized void committed(long sequence) {
+        if (!ordered) return;
+        next = sequence + 1;
+        notifyAll();
+    }
+
+    public synchronized void fail(Exception cause) {
+        if (failure == null) failure = cause;
+        notifyAll();
+    }
+}
+
+// Bounded pool of preallocated row blocks cycling from the parser to the
+// writers and back. Records how long each side waited on the other
+final class RowRing {
+
+    private final ArrayDeque<RowBlock> free = new ArrayDeque<>();
+    private final ArrayDeque<RowBlock> filled = new ArrayDeque<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition freed = lock.newCondition();
+    private final Condition published = lock.newCondition();
+
+    private Exception failure;
+    private long producerWaitNanos;
+
+    public RowRing(int blocks, int rows, int columns) {
+        for (int i = 0; i < blocks; i++) free.add(new RowBlock(rows, columns));
+    }
+
+    // Next empty block for the parser, waiting while every block is in flight
+    public RowBlock claim() throws SQLException {
+        lock.lock();
+        try {
+            long start = System.nanoTime();
+            while (free.isEmpty() && failure == null) freed.awaitUninterruptibly();
+            producerWaitNanos += System.nanoTime() - start;
+            failIfAborted();
+
+            RowBlock block = free.poll();
+            block.clear();
+            return block;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void publish(RowBlock block) throws SQLException {
+        lock.lock();
+        try {
+            failIfAborted();
+            filled.add(block);
+            published.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public RowBlock take() throws SQLException {
+        lock.lock();
+        try {
+            while (filled.isEmpty() && failure == null) published.awaitUninterruptibly();
+            failIfAborted();
+            return filled.poll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void release(RowBlock block) {
+        lock.lock();
+        try {
+            free.add(block);
+            freed.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void abort(Exception cause) {
+        lock.lock();
+        try {
+            if (failure == null) failure = cause;
+            freed.signalAll();
+            published.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long producerWaitNanos() {
+        lock.lock();
+        try {
+            return producerWaitNanos;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void failIfAborted() throws SQLException {
+        if (failure != null) throw new SQLException("Seeding pipeline aborted", failure);
+    }
+}
+
+// Rows of one chunk as typed cells in flat preallocated arrays
+final class RowBlock {
+
+    // Marks the end of the stream for a writer
+    static final RowBlock END = new RowBlock(0, 0);
+
+    private static final byte INT = 1, DOUBLE = 2, STRING = 3;
+
+    private final int columns;
+    private final byte[] kinds;
+    private final long[] numbers;
+    private final String[] strings;
+
+    int size;
+    long bytes;
+    long endOffset;
+    long sequence;
+    long rowsThrough;
+    String lastKey;
+    boolean checkpointed;
+
+    RowBlock(int rows, int columns) {
+        this.columns = columns;
+        this.kinds = new byte[rows * columns];
+        this.numbers = new long[rows * columns];
+        this.strings = new String[rows * columns];
+    }
+
+    void clear() {
+        size = 0;
+        bytes = 0;
+    }
+
+    void setInt(int column, int value) {
+        int cell = size * columns + column - 1;
+        kinds[cell] = INT;
+        numbers[cell] = value;
+    }
+
+    void setDouble(int column, double value) {
+        int cell = size * columns + column - 1;
+        kinds[cell] = DOUBLE;
+        numbers[cell] = Double.doubleToRawLongBits(value);
+    }
+
+    void setString(int column, String value) {
+        int cell = size * columns + column - 1;
+        kinds[cell] = STRING;
+        strings[cell] = value;
+    }
+
+    void endRow(int recordBytes, long offset) {
+        size++;
+        bytes += recordBytes;
+        endOffset = offset;
+    }
+
+    void replay(SeedSink sink) throws SQLException {
+        for (int row = 0, cell = 0; row < size; row++) {
+            for (int column = 1; column <= columns; column++, cell++) {
+                switch (kinds[cell]) {
+                    case INT: sink.setInt(column, (int) numbers[cell]); break;
+                    case DOUBLE: sink.setDouble(column, Double.longBitsToDouble(numbers[cell])); break;
+                    case STRING: sink.setString(column, strings[cell]); break;
+                    default: break;
+                }
+            }
+            sink.endRow();
+        }
+    }
+}
+
+// Where an unfinished load of a table stopped: the table being written,
+// the byte offset in the source after the last committed row and its key
+final class SeedCheckpoint {
+
+    final String target;
+    final String checksum;
+    final long offset;
+    final String lastKey;
+    final long rows;
+
+    private SeedCheckpoint(String target, String checksum, long offset, String lastKey, long rows) {
+        this.target = target;
+        this.checksum = checksum;
+        this.offset = offset;
+        this.lastKey = lastKey;
+        this.rows = rows;
+    }
+
+    public static SeedCheckpoint read(Connection connection, String table) throws SQLException {
+        try (PreparedStatement selection = connection.prepareStatement(SqlSeedCheckpoint.SELECT)) {
+            selection.setString(1, table);
+            ResultSet result = selection.executeQuery();
+            if (!result.next()) return null;
+            return new SeedCheckpoint(
+                result.getString("target_table"),
+                result.getString("checksum"),
+                result.getLong("byte_offset"),
+                result.getString("last_key"),
+                result.getLong("row_count"));
+        }
+    }
+
+    public static void clear(Connection connection, String table) throws SQLException {
+        try (PreparedStatement deletion = connection.prepareStatement(SqlSeedCheckpoint.DELETE)) {
+            deletion.setString(1, table);
+            deletion.executeUpdate();
+        }
+    }
+}
+
+// Saves the checkpoint of one table within the caller's transaction
+final class CheckpointWriter implements AutoCloseable {
+
+    private final String table, target, checksum;
+    private final PreparedStatement update, insertion, deletion;
+
+    public CheckpointWriter(Connection connection, String table, String target, String checksum) throws SQLException {
+        this.table = table;
+        this.target = target;
+        this.checksum = checksum;
+        this.update = connection.prepareStatement(SqlSeedCheckpoint.UPDATE);
+        this.insertion = connection.prepareStatement(SqlSeedCheckpoint.INSERT);
+        this.deletion = connection.prepareStatement(SqlSeedCheckpoint.DELETE);
+    }
+
+    public void save(long offset, String lastKey, long rows) throws SQLException {
+        update.setLong(1, offset);
+        update.setString(2, lastKey);
+        update.setLong(3, rows);
+        update.setString(4, table);
+        if (update.executeUpdate() > 0) return;
+
+        insertion.setString(1, table);
+        insertion.setString(2, target);
+        insertion.setString(3, checksum);
+        insertion.setLong(4, offset);
+        insertion.setString(5, lastKey);
+        insertion.setLong(6, rows);
+        insertion.executeUpdate();
+    }
+
+    public void clear() throws SQLException {
+        deletion.setString(1, table);
+        deletion.executeUpdate();
+    }
+
+    @Override
+    public void close() throws SQLException {
+        update.close();
+        insertion.close();
+        deletion.close();
+    }
+}
+
+// Destination of the parsed rows of a table, columns are numbered from 1
+// in the order of the seeder's insertion
+interface SeedSink extends AutoCloseable {
+
+    void setInt(int column, int value) throws SQLException;
+
+    void setDouble(int column, double value) throws SQLException;
+
+    void setString(int column, String value) throws SQLException;
+
+    void endRow() throws SQLException;
+
+    // Sends the buffered rows within the connection's current transaction
+    void flush() throws SQLException;
+
+    void discard() throws SQLException;
+
+    // Runs once after the last chunk is flushed
+    void finish() throws SQLException;
+
+    @Override
+    void close() throws SQLException;
+}
+
+final class SeedSinks {
+
+    public static final String
+    
+        AUTO = "auto",
+
+        BULK_COPY = "bulk",
+
+        JDBC_BATCH = "batch";
+
+    // An exclusive sink is the only writer of its table and may lock all of it
+    public static SeedSink open(String kind, String connectionUrl, Connection connection, String table, String[] columns, boolean exclusive) throws SQLException {
+        boolean bulkCopy = kind.equals(BULK_COPY) 
+            || kind.equals(AUTO) && connectionUrl.startsWith("jdbc:sqlserver:");
+
+        return bulkCopy
+            ? new BulkCopySink(connection, table, columns, exclusive)
+            : new JdbcBatchSink(connection, table, columns);
+    }
+}
+
+// Portable path: one parameterized insert per row, sent as a JDBC batch
+final class JdbcBatchSink implements SeedSink {
+
+    private final PreparedStatement insertion;
+
+    public JdbcBatchSink(Connection connection, String table, String[] columns) throws SQLException {
+        this.insertion = connection.prepareStatement(SqlInsertion.of(table, columns));
+    }
+
+    @Override
+    public void setInt(int column, int value) throws SQLException {
+        insertion.setInt(column, value);
+    }
+
+    @Override
+    public void setDouble(int column, double value) throws SQLException {
+        insertion.setDouble(column, value);
+    }
+
+    @Override
+    public void setString(int column, String value) throws SQLException {
+        insertion.setString(column, value);
+    }
+
+    @Override
+    public void endRow() throws SQLException {
+        insertion.addBatch();
+    }
+
+    @Override
+    public void flush() throws SQLException {
+        insertion.executeBatch();
+    }
+
+    @Override
+    public void discard() throws SQLException {
+        insertion.clearBatch();
+    }
+
+    @Override
+    public void finish() { }
+
+    @Override
+    public void close() throws SQLException {
+        insertion.close();
+    }
+}
+
+// SQL Server path: buffers a chunk of rows and streams them through
+// SQLServerBulkCopy, under a table lock when it is the only writer.
+// Constraints are not checked per row but once for the whole table when
+// the load finishes
+final class BulkCopySink implements SeedSink {
+
+    private final Connection connection;
+    private final String table;
+    private final String[] columns;
+    private final ColumnMetadata metadata;
+    private final boolean[] decimals;
+    private final boolean exclusive;
+
+    private Object[][] rows = new Object[64][];
+    private int count;
+
+    public BulkCopySink(Connection connection, String table, String[] columns, boolean exclusive) throws SQLException {
+        this.connection = connection;
+        this.exclusive = exclusive;
+        this.table = table;
+        this.columns = columns;
+        this.metadata = ColumnMetadata.probe(connection, table, columns);
+        this.decimals = new boolean[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            decimals[i] = metadata.types[i] == Types.NUMERIC || metadata.types[i] == Types.DECIMAL;
+        }
+
+        rows[0] = new Object[columns.length];
+    }
+
+    @Override
+    public void setInt(int column, int value) {
+        rows[count][column - 1] = decimals[column - 1] ? (Object) BigDecimal.valueOf(value) : (Object) value;
+    }
+
+    @Override
+    public void setDouble(int column, double value) {
+        rows[count][column - 1] = decimals[column - 1] ? (Object) BigDecimal.valueOf(value) : (Object) value;
+    }
+
+    @Override
+    public void setString(int column, String value) {
+        rows[count][column - 1] = value;
+    }
+
+    @Override
+    public void endRow() {
+        count++;
+        if (count == rows.length) rows = Arrays.copyOf(rows, rows.length * 2);
+        if (rows[count] == null) rows[count] = new Object[columns.length];
+    }
+
+    @Override
+    public void flush() throws SQLException {
+        if (count == 0) return;
+
+        SQLServerBulkCopyOptions options = new SQLServerBulkCopyOptions();
+        options.setTableLock(exclusive);
+        options.setCheckConstraints(false);
+        options.setBulkCopyTimeout(0);
+        options.setBatchSize(count);
+
+        try (SQLServerBulkCopy bulkCopy = new SQLServerBulkCopy(connection.unwrap(SQLServerConnection.class))) {
+            bulkCopy.setBulkCopyOptions(options);
+            bulkCopy.setDestinationTableName(table);
+            for (int i = 0; i < columns.length; i++) {
+                bulkCopy.addColumnMapping(i + 1, columns[i]);
+            }
+            bulkCopy.writeToServer(new BufferedRows(count));
+        } finally {
+            count = 0;
+        }
+    }
+
+    @Override
+    public void discard() {
+        count = 0;
+    }
+
+    @Override
+    public void finish() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("alter table " + table + " with check check constraint all");
+        }
+    }
+
+    @Override
+    public void close() { }
+
+    // Hands the buffered chunk to the driver one row at a time
+    private final class BufferedRows implements ISQLServerBulkData {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int size;
+        private int row = -1;
+
+        BufferedRows(int size) {
+            this.size = size;
+        }
+
+        @Override
+        public Set<Integer> getColumnOrdinals() {
+            Set<Integer> ordinals = new LinkedHashSet<>();
+            for (int i = 1; i <= columns.length; i++) ordinals.add(i);
+            return ordinals;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return columns[column - 1];
+        }
+
+        @Override
+        public int getColumnType(int column) {
+            return metadata.types[column - 1];
+        }
+
+        @Override
+        public int getPrecision(int column) {
+            return metadata.precisions[column - 1];
+        }
+
+        @Override
+        public int getScale(int column) {
+            return metadata.scales[column - 1];
+        }
+
+        @Override
+        public Object[] getRowData() {
+            return rows[row];
+        }
+
+        @Override
+        public boolean next() {
+            return ++row < size;
+        }
+    }
+}
+
+// Seeds a table whose rows map cell by cell from its source, as described
+// by a TableMapping. The mapping is compiled into one binder per source
+// cell when a load starts, so rows are bound without looking at types
+final class MappedTableSeeder extends TableSeeder {
+
+    @FunctionalInterface
+    interface CellBinder {
+        void bind(SourceTokenizer cells) throws SQLException;
+    }
+
+    private final TableMapping mapping;
+
+    public MappedTableSeeder(ConnectionPool pool, TableMapping mapping) {
+        super(pool, mapping.file, mapping.table, SqlInsertion.of(mapping.table, mapping.columns()));
+        this.mapping = mapping;
+    }
+
+    @Override
+    protected String[] keys() {
+        return mapping.keys();
+    }
+
+    @Override
+    protected boolean splittable() {
+        return true;
+    }
+
+    @Override
+    protected void runBatch(ChunkedBatch batch) throws SQLException, IOException {
+        if (batch.splits() > 1) {
+            batch.parseRanges(source(), mapping.delimiter, this::bindAll);
+            return;
+        }
+
+        try (SourceTokenizer cells = openSource(batch, mapping.delimiter)) {
+            bindAll(cells, batch);
+        }
+    }
+
+    private void bindAll(SourceTokenizer cells, ChunkedBatch batch) throws SQLException, IOException {
+        String[] keyParts = new String[mapping.keys().length];
+        CellBinder[] binders = compile(batch, keyParts);
+        boolean compositeKey = keyParts.length > 1;
+
+        while (cells.nextRecord()) {
+            for (CellBinder binder : binders) binder.bind(cells);
+            if (compositeKey) batch.key(String.join(Delimiter.COMMA, keyParts));
+            batch.add(cells);
+        }
+    }
+
+    // Binders in source order. Cells no column reads are skipped
+    private CellBinder[] compile(ChunkedBatch batch, String[] keyParts) {
+        SeedSink sink = batch.sink();
+        List<TableMapping.ColumnMapping> bySource = new ArrayList<>(mapping.columnMappings());
+        bySource.sort(Comparator.comparingInt(column -> column.source));
+
+        List<CellBinder> binders = new ArrayList<>();
+        int nextSource = 0;
+        for (TableMapping.ColumnMapping column : bySource) {
+            for (; nextSource < column.source; nextSource++) binders.add(SourceTokenizer::skipCell);
+            nextSource = column.source + 1;
+
+            int parameter = mapping.columnMappings().indexOf(column) + 1;
+            int keyPart = Arrays.asList(mapping.keys()).indexOf(column.column);
+            binders.add(binder(sink, batch, column, parameter, keyPart, keyParts));
+        }
+        return binders.toArray(new CellBinder[0]);
+    }
+
+    private static CellBinder binder(SeedSink sink, ChunkedBatch batch, TableMapping.ColumnMapping column, int parameter, int keyPart, String[] keyParts) {
+        boolean zeroBlank = column.blank == TableMapping.Blank.ZERO;
+        boolean singleKey = keyPart >= 0 && keyParts.length == 1;
+        boolean compositeKey = keyPart >= 0 && keyParts.length > 1;
+
+        switch (column.type) {
+            case INT:
+                if (zeroBlank) return cells -> sink.setInt(parameter, blank(cells) ? 0 : cells.nextInt());
+                if (singleKey) return cells -> {
+                    int value = cells.nextInt();
+                    sink.setInt(parameter, value);
+                    batch.key(value);
+                };
+                if (compositeKey) return cells -> {
+                    int value = cells.nextInt();
+                    sink.setInt(parameter, value);
+                    keyParts[keyPart] = String.valueOf(value);
+                };
+                return cells -> sink.setInt(parameter, cells.nextInt());
+
+            case DOUBLE:
+            case FLOAT:
+                if (zeroBlank) return cells -> sink.setDouble(parameter, blank(cells) ? 0 : cells.nextDouble());
+                return cells -> sink.setDouble(parameter, cells.nextDouble());
+
+            default:
+                if (zeroBlank) return cells -> sink.setString(parameter, blank(cells) ? "" : cells.nextString());
+                if (singleKey) return cells -> {
+                    String value = cells.nextString();
+                    sink.setString(parameter, value);
+                    batch.key(value);
+                };
+                if (compositeKey) return cells -> {
+                    String value = cells.nextString();
+                    sink.setString(parameter, value);
+                    keyParts[keyPart] = value;
+                };
+                return cells -> sink.setString(parameter, cells.nextString());
+        }
+    }
+
+    // Consumes a blank cell, true when the cell was missing or empty
+    static boolean blank(SourceTokenizer cells) {
+        if (!cells.nextCellBlank()) return false;
+        if (cells.hasNextCell()) cells.skipCell();
+        return true;
+    }
+}
+
+final class SchoolsSeeder extends TableSeeder {
+
+    public SchoolsSeeder(ConnectionPool pool, String file, String table) {
+        super(pool, file, table, SqlInsertion.SCHOOLS);
+    }
+
+    @Override
+    public List<String> sources() {
+        return Arrays.asList(
+            source(),
+            SourceTokenizer.resolve(StateCodes.STATE_NAMES_FILE),
+            SourceTokenizer.resolve(StateCodes.STATES_FILE));
+    }
+
+    @Override
+    protected void runBatch(ChunkedBatch batch) throws SQLException, IOException {
+        SeedSink insertion = batch.sink();
+
+        // The checkpoint key carries the state the resumed rows belong to
+        String resumedState = batch.resumeKey() == null ? "" : batch.resumeKey().split(Delimiter.TAB)[0];
+
+        try (SourceTokenizer cells = openSource(batch, SourceTokenizer.TAB)) {
+            new SchoolsReader(source()).read(cells, resumedState, (code, name, state, stateCode, record) -> {
+                insertion.setInt(1, code);
+                insertion.setString(2, name);
+                insertion.setInt(3, stateCode);
+                batch.key(state);
+                batch.key(code);
+                batch.add(record);
+            });
+        }
+    }
+
+    @FunctionalInterface
+    interface SchoolRecords {
+        void accept(int code, String name, String state, int stateCode, SourceTokenizer record) throws SQLException;
+    }
+
+    // schools.txt lists a state name on its own line followed by that state's schools
+    static class SchoolsReader {
+        private final String file;
+
+        public SchoolsReader(String file) {
+            this.file = file;
+        }
+
+        public void read(SchoolRecords records) throws IOException, SQLException {
+            try (SourceTokenizer cells = SourceTokenizer.open(file, SourceTokenizer.TAB)) {
+                cells.nextRecord();
+                read(cells, "", records);
+            }
+        }
+
+        // Reads the remaining records of cells, which start within the given state
+        public void read(SourceTokenizer cells, String state, SchoolRecords records) throws IOException, SQLException {
+            StateCodes stateCodes = StateCodes.shared();
+            int stateCode = stateCodes.codeOfState(state);
+
+            while (cells.nextRecord()) {
+                if (cells.cellCount() == 1) {
+                    state = cells.nextString();
+                    stateCode = stateCodes.codeOfState(state);
+                    continue;
+                }
+
+                if (stateCode == StateCodes.UNKNOWN) continue;
+                int code = cells.nextInt();
+                records.accept(code, cells.nextString(), state, stateCode, cells);
+            }
+        }
+    }
+
+}
+
+// Numeric state codes of states.txt, looked up by upper-case state name
+// through the two-letter alpha codes of state_code_and_names.txt
+final class StateCodes {
+
+    public static final int UNKNOWN = -1;
+
+    public static final String STATE_NAMES_FILE = "state_code_and_names.txt";
+    public static final String STATES_FILE = "states.txt";
+
+    private static final int LETTERS = 26;
+    private static StateCodes shared;
+
+    private final Map<String, String> alphaCodes = new HashMap<>(); // NAME -> AA
+    private final int[] codes = new int[LETTERS * LETTERS]; // AA -> 1
+
+    private StateCodes() throws IOException {
+        Arrays.fill(codes, UNKNOWN);
+
+        try (SourceTokenizer cells = SourceTokenizer.open(STATE_NAMES_FILE, SourceTokenizer.TAB)) {
+            while (cells.nextRecord()) {
+                String alphaCode = cells.nextString();
+                alphaCodes.put(cells.nextString().toUpperCase(), alphaCode);
+            }
+        }
+
+        try (SourceTokenizer cells = SourceTokenizer.open(STATES_FILE, SourceTokenizer.WHITESPACE)) {
+            cells.nextRecord();
+            while (cells.nextRecord()) {
+                int code = cells.nextInt();
+                int index = index(cells.nextString());
+                if (index >= 0) codes[index] = code;
+            }
+        }
+    }
+
+    public static synchronized StateCodes shared() throws IOException {
+        if (shared == null) shared = new StateCodes();
+        return shared;
+    }
+
+    public int codeOfState(String name) {
+        String alphaCode = alphaCodes.get(name);
+        return alphaCode == null ? UNKNOWN : codeOfAlpha(alphaCode);
+    }
+
+    public int codeOfAlpha(String alphaCode) {
+        int index = index(alphaCode);
+        return index < 0 ? UNKNOWN : codes[index];
+    }
+
+    private static int index(String alphaCode) {
+        if (alphaCode.length() != 2) return -1;
+        int first = alphaCode.charAt(0) - 'A', second = alphaCode.charAt(1) - 'A';
+        if (first < 0 || first >= LETTERS || second < 0 || second >= LETTERS) return -1;
+        return first * LETTERS + second;
+    }
+}
+
+// Splits a mapped source file into records and cells and parses numbers
+// straight from the bytes, so only string cells allocate
+final class SourceTokenizer implements Closeable {
 
-    private void databasesCountForEachLibrary(Query query) {
+    // Runs of any whitespace separate cells, like Delimiter.SPACE
+    public static final byte WHITESPACE = ' ';
+    public static final byte TAB = '\t';
+    public static final byte COMMA = ',';
 
-        if (applyCacheIfPresent(query.header)) return;
+    public static final String GZIP_SUFFIX = ".gz";
 
-        try {
-            PreparedStatement statement = connection.prepareStatement(query.body);
-            ResultSet resultSet = statement.executeQuery();
-            List<String[]> results = new ArrayList<>();
-            while (resultSet.next()) {
-                String[] result = { 
-                    resultSet.getString("library_name"),
-                    String.valueOf(resultSet.getInt("local_cooperative_agreements")),
-                    String.valueOf(resultSet.getInt("state_licensed_databases")),
-                    String.valueOf(resultSet.getInt("total_databases")),
-                };
-                results.add(result);
-            }
+    private static final int MAX_FAST_DIGITS = 15;
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+        1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
 
-            if (results.isEmpty()) displayNotFound();
-            else {
-                String[][] records = toTableRecords(results);
-                String[] header = { "Library", "Local Cooperative Agreements", "State Licensed Databases", "Total Databases" };
-                UI.tabulate(records, header, query.header);
-                cache.put(query.header, new CacheRecord(query.header, header, records));
-            }
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        }
-    }
+    private final SourceWindows windows;
+    private final byte delimiter;
 
-    private void addressForEachLibrary(Query query) {
+    private ByteBuffer window;
+    private long windowStart;
+    private int windowLimit;
 
-        if (applyCacheIfPresent(query.header)) return;
+    private int next;
+    private int recordStart, recordEnd, recordBytes;
+    private int cursor;
+    private boolean exhausted = true;
+    private byte[] scratch = new byte[256];
 
-        try {
-            PreparedStatement statement = connection.prepareStatement(query.body);
-            ResultSet resultSet = statement.executeQuery();
-            List<String[]> results = new ArrayList<>();
-            while (resultSet.next()) {
-                String[] result = {
-                    resultSet.getString("library_name"),
-                    resultSet.getString("street_address"),
-                    resultSet.getString("city"),
-                    resultSet.getString("zipcode"),
-                    resultSet.getString("state_alpha_code"),
-                    resultSet.getString("county_name"),
-                    String.valueOf(resultSet.getInt("latitude")),
-                    String.valueOf(resultSet.getInt("longitude"))
-                };
-                results.add(result);
-            }
+    private SourceTokenizer(SourceWindows windows, byte delimiter, long offset) throws IOException {
+        this.windows = windows;
+        this.delimiter = delimiter;
+        map(offset);
+    }
 
-            if (results.isEmpty()) displayNotFound();
-            else {
-                String[][] records = toTableRecords(results);
-                String[] header = { "Library", "Street", "City", "Zipcode", "State Alpha Code", "County", "Latitude", "Longitude" };
-                UI.tabulate(records, header, query.header);
-                cache.put(query.header, new CacheRecord(query.header, header, records));
-            }
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        }
+    public static SourceTokenizer open(String file, byte delimiter) throws IOException {
+        return open(file, delimiter, 0);
     }
 
-    private void top10MostExpensiveLibrariesToRun(Query query) {
+    // Starts at a byte offset that must be the beginning of a record. A
+    // gzip file, or the .gz variant of a file that is missing, is inflated
+    // on its own thread while the records are parsed
+    public static SourceTokenizer open(String file, byte delimiter, long offset) throws IOException {
+        String source = resolve(file);
+        SourceWindows windows = source.endsWith(GZIP_SUFFIX) ? new InflatedWindows(source) : new MappedWindows(source);
+        return new SourceTokenizer(windows, delimiter, offset);
+    }
 
-        if (applyCacheIfPresent(query.header)) return;
+    // Reads the records of a plain file from offset up to end, both at the beginning of a record
+    public static SourceTokenizer open(String file, byte delimiter, long offset, long end) throws IOException {
+        return new SourceTokenizer(new MappedWindows(file, end), delimiter, offset);
+    }
 
-        try {
-            PreparedStatement statement = connection.prepareStatement(query.body);
-            ResultSet resultSet = statement.executeQuery();
-            List<String[]> results = new ArrayList<>();
-            while (resultSet.next()) {
-                String[] result = {
-                    resultSet.getString("library_name"),
-                    String.valueOf(resultSet.getDouble("total_cost"))
-                };
-                results.add(result);
+    // Offsets cutting a plain file into parts that each start at the
+    // beginning of a line, the last one being the file size
+    public static long[] split(String file, int parts) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long[] bounds = new long[parts + 1];
+            bounds[parts] = size;
+
+            ByteBuffer probe = ByteBuffer.allocate(64 * 1024);
+            for (int i = 1; i < parts; i++) {
+                bounds[i] = lineStart(channel, Math.max(bounds[i - 1], size / parts * i), probe);
             }
+            return bounds;
+        }
+    }
 
-            if (results.isEmpty()) displayNotFound();
-            else {
-                String[][] records = toTableRecords(results);
-                String[] header = { "Library", "Total Cost" };
-                UI.tabulate(records, header, query.header);
-                cache.put(query.header, new CacheRecord(query.header, header, records));
+    // First line start at or after position
+    private static long lineStart(FileChannel channel, long position, ByteBuffer probe) throws IOException {
+        if (position == 0) return 0;
+        for (long at = position - 1; at < channel.size(); ) {
+            probe.clear();
+            int read = channel.read(probe, at);
+            if (read <= 0) break;
+            for (int i = 0; i < read; i++) {
+                if (probe.get(i) == '\n') return at + i + 1;
             }
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
+            at += read;
         }
+        return channel.size();
     }
 
-    private void Top10LibrariesWithHighestAveragePayPerEmployee(Query query) {
+    // The file itself, or its .gz variant when only that one exists
+    public static String resolve(String file) {
+        if (Files.exists(Paths.get(file)) || !Files.exists(Paths.get(file + GZIP_SUFFIX))) return file;
+        return file + GZIP_SUFFIX;
+    }
 
-        if (applyCacheIfPresent(query.header)) return;
+    // Byte offset in the uncompressed source just past the current record
+    public long offset() {
+        return windowStart + next;
+    }
 
-        try {
-            PreparedStatement statement = connection.prepareStatement(query.body);
-            ResultSet resultSet = statement.executeQuery();
-            List<String[]> results = new ArrayList<>();
-            while (resultSet.next()) {
-                String[] result = {
-                    resultSet.getString("library_name"),
-                    String.valueOf(resultSet.getInt("average_pay"))
-                };
-                results.add(result);
+    // Moves to the next non-blank record, false at the end of the file
+    public boolean nextRecord() throws IOException {
+        while (next < windowLimit || windows.hasBytesAfter(windowStart + windowLimit)) {
+            int end = indexOfNewLine(next);
+            if (end < 0) {
+                if (windows.hasBytesAfter(windowStart + windowLimit)) {
+                    map(windowStart + next);
+                    continue;
+                }
+                end = windowLimit;
             }
 
-            if (results.isEmpty()) displayNotFound();
-            else {
-                String[][] records = toTableRecords(results);
-                String[] header = { "Library", "Average Pay" };
-                UI.tabulate(records, header, query.header);
-                cache.put(query.header, new CacheRecord(query.header, header, records));
-            }
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
+            recordStart = next;
+            recordBytes = Math.min(end + 1, windowLimit) - next;
+            next = end + 1;
+
+            recordEnd = end;
+            while (recordStart < recordEnd && window.get(recordStart) <= ' ') recordStart++;
+            while (recordEnd > recordStart && window.get(recordEnd - 1) <= ' ') recordEnd--;
+            if (recordStart == recordEnd) continue;
+
+            cursor = recordStart;
+            exhausted = false;
+            return true;
         }
+
+        exhausted = true;
+        return false;
     }
 
-    private void staffCountAndStaffPayPerLibrary(Query query) {
+    // Uncompressed size of the source, estimated while a gzip source is inflating
+    public long size() {
+        return windows.size();
+    }
 
-        if (applyCacheIfPresent(query.header)) return;
+    // Raw length of the current record including its line break
+    public int recordBytes() {
+        return recordBytes;
+    }
 
-        try {
-            PreparedStatement statement = connection.prepareStatement(query.body);
-            ResultSet resultSet = statement.executeQuery();
-            List<String[]> results = new ArrayList<>();
-            while (resultSet.next()) {
-                String[] result = {
-                    resultSet.getString("library_name"),
-                    String.valueOf(resultSet.getInt("librarians")),
-                    String.valueOf(resultSet.getInt("employees")),
-                    String.valueOf(resultSet.getInt("total_staff")),
-                    String.valueOf(resultSet.getInt("salaries")),
-                    String.valueOf(resultSet.getInt("benefits")),
-                    String.valueOf(resultSet.getInt("total_employee_expenditures"))
-                };
-                results.add(result);
-            }
+    public boolean hasNextCell() {
+        return !exhausted;
+    }
 
-            if (results.isEmpty()) displayNotFound();
-            else {
-                String[][] records = toTableRecords(results);
-                String[] header = { "Library", "Librarians", "Employees", "Total Staff", "Salaries", "Benefits", "Total Employee Expenditures" };
-                UI.tabulate(records, header, query.header);
-                cache.put(query.header, new CacheRecord(query.header, header, records));
-            }
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
+    // Cells left in the current record, without consuming them
+    public int cellCount() {
+        int savedCursor = cursor;
+        boolean savedExhausted = exhausted;
+
+        int count = 0;
+        while (!exhausted) {
+            skipCell();
+            count++;
         }
-    }
 
-    private void capitalRevenuesForEachLibraryDesc(Query query) {
+        cursor = savedCursor;
+        exhausted = savedExhausted;
+        return count;
+    }
 
-        if (applyCacheIfPresent(query.header)) return;
+    // Whether the next cell is missing or empty, without consuming it
+    public boolean nextCellBlank() {
+        return exhausted || cellEnd() == cursor;
+    }
 
-        try {
-            PreparedStatement statement = connection.prepareStatement(query.body);
-            ResultSet resultSet = statement.executeQuery();
-            List<String[]> results = new ArrayList<>();
-            while (resultSet.next()) {
-                String[] result = {
-                    resultSet.getString("library_name"),
-                    String.valueOf(resultSet.getInt("local_government_capital_revenue")),
-                    String.valueOf(resultSet.getInt("state_government_capital_revenue")),
-                    String.valueOf(resultSet.getInt("federal_government_capital_revenue")),
-                    String.valueOf(resultSet.getInt("other_capital_revenue")),
-                    String.valueOf(resultSet.getInt("total_capital_revenue"))
-                };
-                results.add(result);
-            }
+    public void skipCell() {
+        advancePast(cellEnd());
+    }
 
-            if (results.isEmpty()) displayNotFound();
-            else {
-                String[][] records = toTableRecords(results);
-                String[] header = { "Library", "Local Government Operating Revenue", "State Government Operating Revenue", "Federal Government Operating Revenue", "Other Capital Revenue", "Federal Government Operating Revenue" };
-                UI.tabulate(records, header, query.header);
-                cache.put(query.header, new CacheRecord(query.header, header, records));
-            }
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
+    public int nextInt() {
+        int end = cellEnd();
+        int i = cursor;
+        boolean negative = false;
+        if (i < end && (window.get(i) == '-' || window.get(i) == '+')) negative = window.get(i++) == '-';
+
+        long value = 0;
+        boolean valid = i < end;
+        for (; i < end && valid; i++) {
+            int digit = window.get(i) - '0';
+            valid = digit >= 0 && digit <= 9;
+            value = value * 10 + digit;
+            if (value > (long) Integer.MAX_VALUE + 1) valid = false;
         }
-    }
 
-    private void operatingRevenuesForEachLibraryDesc(Query query) {
+        if (negative) value = -value;
+        if (!valid || value > Integer.MAX_VALUE) return Integer.parseInt(slowCell(end));
 
-        if (applyCacheIfPresent(query.header)) return;
+        advancePast(end);
+        return (int) value;
+    }
 
-        try {
-            PreparedStatement statement = connection.prepareStatement(query.body);
-            ResultSet resultSet = statement.executeQuery();
-            List<String[]> results = new ArrayList<>();
-            while (resultSet.next()) {
-                String[] result = {
-                    resultSet.getString("library_name"),
-                    String.valueOf(resultSet.getInt("local_government_operating_revenue")),
-                    String.valueOf(resultSet.getInt("state_government_operating_revenue")),
-                    String.valueOf(resultSet.getInt("federal_government_operating_revenue")),
-                    String.valueOf(resultSet.getInt("other_operating_revenue")),
-                    String.valueOf(resultSet.getInt("total_operating_revenue")),
-                };
-                results.add(result);
+    public double nextDouble() {
+        int end = cellEnd();
+        int i = cursor;
+        boolean negative = false;
+        if (i < end && (window.get(i) == '-' || window.get(i) == '+')) negative = window.get(i++) == '-';
+
+        long mantissa = 0;
+        int digits = 0, scale = 0;
+        boolean dot = false, sawDigit = false, valid = i < end;
+        for (; i < end && valid; i++) {
+            byte b = window.get(i);
+            if (b == '.' && !dot) {
+                dot = true;
+                continue;
             }
 
-            if (results.isEmpty()) displayNotFound();
-            else {
-                String[][] records = toTableRecords(results);
-                String[] header = { "Library", "Local Government Operating Revenue", "State Government Operating Revenue", "Federal Government Operating Revenue", "Other Capital Revenue", "Federal Government Operating Revenue" };
-                UI.tabulate(records, header, query.header);
-                cache.put(query.header, new CacheRecord(query.header, header, records));
-            }
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
+            int digit = b - '0';
+            valid = digit >= 0 && digit <= 9;
+            sawDigit = true;
+            mantissa = mantissa * 10 + digit;
+            if (mantissa != 0) digits++;
+            if (dot) scale++;
+            if (digits > MAX_FAST_DIGITS || scale >= POWERS_OF_TEN.length) valid = false;
         }
-    }
 
-    private void collectionExpendituresForEachLibraryDesc(Query query) {
+        // Both operands are exact doubles here, so the division is correctly rounded
+        if (!valid || !sawDigit) return Double.parseDouble(slowCell(end));
 
-        if (applyCacheIfPresent(query.header)) return;
+        advancePast(end);
+        double value = mantissa / POWERS_OF_TEN[scale];
+        return negative ? -value : value;
+    }
 
-        try {
-            PreparedStatement statement = connection.prepareStatement(query.body);
-            ResultSet resultSet = statement.executeQuery();
-            List<String[]> results = new ArrayList<>();
-            while (resultSet.next()) {
-                String[] result = {
-                    resultSet.getString("library_name"),
-                    String.valueOf(resultSet.getInt("print_collection_expenditures")),
-                    String.valueOf(resultSet.getInt("digital_collection_expenditures")),
-                    String.valueOf(resultSet.getInt("other_collection_expenditures")),
-                    String.valueOf(resultSet.getInt("total_collection_expenditures")),
-                };
-                results.add(result);
-            }
+    public String nextString() {
+        int end = cellEnd();
+        int start = cursor;
+        String value;
 
-            if (results.isEmpty()) displayNotFound();
-            else {
-                String[][] records = toTableRecords(results);
-                String[] header = { "Library", "Print Collection Expenditures", "Digital Collection Expenditures", "Other Collection Expenditures", "Total Collection Expenditures" };
-                UI.tabulate(records, header, query.header);
-                cache.put(query.header, new CacheRecord(query.header, header, records));
-            }
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
+        if (delimiter == COMMA && end - start >= 2 && window.get(start) == '"' && window.get(end - 1) == '"') {
+            value = text(start + 1, end - 1).replace("\"\"", "\"");
+        } else {
+            value = text(start, end);
         }
+
+        advancePast(end);
+        return value;
     }
 
-    private void schoolsWithStateTotalPopulation(Query query) {
+    @Override
+    public void close() throws IOException {
+        windows.close();
+    }
 
-        if (applyCacheIfPresent(query.header)) return;
+    private void map(long position) throws IOException {
+        window = windows.window(position);
+        windowStart = position;
+        windowLimit = window.limit();
+        next = 0;
+    }
 
-        try {
-            PreparedStatement statement = connection.prepareStatement(query.body);
-            ResultSet resultSet = statement.executeQuery();
-            List<String[]> results = new ArrayList<>();
-            while (resultSet.next()) {
-                String[] result = {
-                    resultSet.getString("school_name"),
-                    resultSet.getString("state_alpha_code"),
-                    String.valueOf(resultSet.getInt("state_population"))
-                };
-                results.add(result);
-            }
+    private int indexOfNewLine(int from) {
+        for (int i = from; i < windowLimit; i++) {
+            if (window.get(i) == '\n') return i;
+        }
+        return -1;
+    }
 
-            if (results.isEmpty()) displayNotFound();
-            else {
-                String[][] records = toTableRecords(results);
-                String[] header = { "School", "State Alpha Code", "State Population" };
-                UI.tabulate(records, header, query.header);
-                cache.put(query.header, new CacheRecord(query.header, header, records));
+    private int cellEnd() {
+        if (exhausted) throw new NoSuchElementException("No more cells in the record");
+
+        int i = cursor;
+        if (delimiter == WHITESPACE) {
+            while (i < recordEnd && window.get(i) > ' ') i++;
+        } else if (delimiter == COMMA && i < recordEnd && window.get(i) == '"') {
+            // Quoted cell, where a doubled quote stands for a literal one
+            i++;
+            while (i < recordEnd) {
+                if (window.get(i++) != '"') continue;
+                if (i < recordEnd && window.get(i) == '"') i++;
+                else break;
             }
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
+            while (i < recordEnd && window.get(i) != delimiter) i++;
+        } else {
+            while (i < recordEnd && window.get(i) != delimiter) i++;
         }
+        return i;
     }
-}
 
-final class Arithmetic {
+    private void advancePast(int end) {
+        if (end >= recordEnd) {
+            cursor = recordEnd;
+            exhausted = true;
+            return;
+        }
 
-    public static boolean isInteger(String value) {
-        try {
-            Integer.parseInt(value);
-            return true;
-        } catch (NumberFormatException e) {
-            return false;
+        cursor = end + 1;
+        if (delimiter == WHITESPACE) {
+            while (cursor < recordEnd && window.get(cursor) <= ' ') cursor++;
         }
     }
 
-    public static boolean isDouble(String value) {
-        try {
-            Double.parseDouble(value);
-            return true;
-        } catch (NumberFormatException e) {
-            return false;
-        }
+    private String slowCell(int end) {
+        String cell = text(cursor, end);
+        advancePast(end);
+        return cell;
+    }
+
+    private String text(int start, int end) {
+        int length = end - start;
+        if (scratch.length < length) scratch = new byte[Math.max(length, scratch.length * 2)];
+        for (int i = 0; i < length; i++) scratch[i] = window.get(start + i);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
     }
 }
 
-// Data
-final class DbLoader {
+// Bytes of a source handed to the tokenizer one window at a time
+interface SourceWindows extends Closeable {
 
-    private String connectionUrl;
-    private TableSeedersRunner runner;
-    
-    private DbLoader(String connectionUrl) {
-        this.connectionUrl = connectionUrl;
-        this.runner = new TableSeedersRunner(connectionUrl);
+    // Window starting at position, at or after the start of the previous
+    // one. Its bytes reach past the end of the previous window
+    ByteBuffer window(long position) throws IOException;
+
+    boolean hasBytesAfter(long position) throws IOException;
+
+    long size();
+}
+
+// Maps a plain file, or the part of it before an end offset, in windows of up to 256 MiB
+final class MappedWindows implements SourceWindows {
+
+    private static final long WINDOW_BYTES = 256L * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final long size;
+    private long mapped = -1;
+
+    public MappedWindows(String file) throws IOException {
+        this(file, Long.MAX_VALUE);
     }
 
-    public static DbLoader up(String connectionUrl) {
-        return new DbLoader(connectionUrl);
+    // Only the bytes before end
+    public MappedWindows(String file, long end) throws IOException {
+        this.channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ);
+        this.size = Math.min(end, channel.size());
     }
 
-    public void run() {
-        createTablesIfAbsent();
-        runner.run();
+    @Override
+    public ByteBuffer window(long position) throws IOException {
+        position = Math.min(position, size);
+        if (position == mapped) throw new IOException("Record longer than " + WINDOW_BYTES + " bytes");
+        mapped = position;
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW_BYTES, size - position));
     }
 
-    private void createTablesIfAbsent() {
-        String[] sql = SqlReader.read("command.sql");
+    @Override
+    public boolean hasBytesAfter(long position) {
+        return position < size;
+    }
 
-        if (sql.length == 0) return;
+    @Override
+    public long size() {
+        return size;
+    }
 
-        try {
-            Connection connection = DriverManager.getConnection(connectionUrl);
-            Statement command = connection.createStatement();
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
 
-            for(int i = 0; i < sql.length; i++) {
-                if(sql[i].trim().equals("")) continue;
-                command.executeUpdate(sql[i]);
+// Inflates a gzip file on its own thread into a bounded queue of chunks,
+// so decompression overlaps parsing. A window is the unparsed rest of the
+// previous one followed by the next chunk
+final class InflatedWindows implements SourceWindows {
+
+    private static final int CHUNK_BYTES = 4 * 1024 * 1024;
+    private static final int QUEUED_CHUNKS = 4;
+    private static final byte[] END = new byte[0];
+
+    private final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<>(QUEUED_CHUNKS);
+    private final Thread inflater;
+    private final long compressedSize;
+
+    private volatile long compressedRead, inflated;
+    private volatile boolean inflatedAll;
+    private volatile IOException failure;
+
+    private byte[] buffer = new byte[0];
+    private long bufferStart;
+    private byte[] lookahead;
+    private boolean ended;
+
+    public InflatedWindows(String file) throws IOException {
+        this.compressedSize = Files.size(Paths.get(file));
+        InputStream compressed = new FilterInputStream(new FileInputStream(file)) {
+            @Override
+            public int read(byte[] bytes, int offset, int length) throws IOException {
+                int read = super.read(bytes, offset, length);
+                if (read > 0) compressedRead += read;
+                return read;
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
+        };
+
+        this.inflater = new Thread(() -> inflate(compressed), "inflate " + file);
+        inflater.setDaemon(true);
+        inflater.start();
+    }
+
+    @Override
+    public ByteBuffer window(long position) throws IOException {
+        long bufferEnd = bufferStart + buffer.length;
+        byte[] kept = position < bufferEnd
+            ? Arrays.copyOfRange(buffer, (int) (position - bufferStart), buffer.length)
+            : new byte[0];
+
+        // A resumed load starts past chunks that are only inflated to be dropped
+        for (long skip = position - bufferEnd; skip > 0; ) {
+            byte[] chunk = nextChunk();
+            if (chunk == null) break;
+            if (chunk.length > skip) kept = Arrays.copyOfRange(chunk, (int) skip, chunk.length);
+            skip -= chunk.length;
         }
-    }   
-}
 
-// Db Seeders
-final class TableSeedersRunner {
-    
-    private final Map<String, TableSeeder> registry = new HashMap<>();
+        byte[] chunk = nextChunk();
+        if (chunk != null) {
+            byte[] joined = Arrays.copyOf(kept, kept.length + chunk.length);
+            System.arraycopy(chunk, 0, joined, kept.length, chunk.length);
+            kept = joined;
+        }
 
-    public TableSeedersRunner(String connectionUrl) {
-        registerTableSeeders(connectionUrl);
+        buffer = kept;
+        bufferStart = position;
+        return ByteBuffer.wrap(buffer);
     }
 
-    private void registerTableSeeders(String connectionUrl) {
-        registry.put(Table.T_STATES, new StatesSeeder(connectionUrl, "states.txt", Table.T_STATES));
-        registry.put(Table.T_SCHOOLS, new SchoolsSeeder(connectionUrl, "schools.txt", Table.T_SCHOOLS));
-        registry.put(Table.T_COUNTIES, new CountiesSeeder(connectionUrl, "county.csv", Table.T_COUNTIES));
-        registry.put(Table.T_OPERATING_REVENUES, new OperatingRevenuesSeeder(connectionUrl, "operating_revenues.txt", Table.T_OPERATING_REVENUES));
-        registry.put(Table.T_CAPITAL_REVENUES, new CapitalRevenuesSeeder(connectionUrl, "capital_revenues.txt", Table.T_CAPITAL_REVENUES));
-        registry.put(Table.T_COLLECTION_EXPENDITURES, new CollectionExpendituresSeeder(connectionUrl, "collection_expenditures.txt", Table.T_COLLECTION_EXPENDITURES));
-        registry.put(Table.T_EMPLOYEE_EXPENDITURES, new EmployeeExpendituresSeeder(connectionUrl, "employee_expenditures.txt", Table.T_EMPLOYEE_EXPENDITURES));
-        registry.put(Table.T_STAFF_MEMBERS_COUNTS, new StaffMembersCountsSeeder(connectionUrl, "staff_members_counts.txt", Table.T_STAFF_MEMBERS_COUNTS));
-        registry.put(Table.T_DATABASES_COUNTS, new DatabasesCountsSeeder(connectionUrl, "databases_counts.txt", Table.T_DATABASES_COUNTS));
-        registry.put(Table.T_LIBRARIES, new LibrariesSeeder(connectionUrl, "library.txt", Table.T_LIBRARIES));
+    @Override
+    public boolean hasBytesAfter(long position) throws IOException {
+        if (position < bufferStart + buffer.length) return true;
+        if (lookahead == null) lookahead = takeChunk();
+        return lookahead != null;
     }
 
-    public void run() {
-        System.out.println("We are loading the best data for you !");
-        System.out.println("------ ------ ------ ------ ------ ------ ------ ------ ------ ------");
-        registry.get(Table.T_STATES).seed();
-        System.out.print("---- o ");
-        registry.get(Table.T_SCHOOLS).seed();
-        System.out.print("---- o ");
-        registry.get(Table.T_COUNTIES).seed();
-        System.out.print("---- o ");
-        registry.get(Table.T_OPERATING_REVENUES).seed();
-        System.out.print("---- o ");
-        registry.get(Table.T_CAPITAL_REVENUES).seed();
-        System.out.print("---- o ");
-        registry.get(Table.T_COLLECTION_EXPENDITURES).seed();
-        System.out.print("---- o ");
-        registry.get(Table.T_EMPLOYEE_EXPENDITURES).seed();
-        System.out.print("---- o ");
-        registry.get(Table.T_STAFF_MEMBERS_COUNTS).seed();
-        System.out.print("---- o ");
-        registry.get(Table.T_DATABASES_COUNTS).seed();
-        System.out.print("---- o ");
-        registry.get(Table.T_LIBRARIES).seed();
-        System.out.print("---- o ");
+    @Override
+    public long size() {
+        if (inflatedAll) return inflated;
+        long read = compressedRead;
+        return read == 0 ? 0 : (long) ((double) inflated * compressedSize / read);
     }
-}
 
-abstract class TableSeeder {
-
-    protected final String connectionUrl, file, table;
+    @Override
+    public void close() {
+        inflater.interrupt();
+    }
 
-    public TableSeeder(String connectionUrl, String file, String table) {
-        this.connectionUrl = connectionUrl;
-        this.file = file;
-        this.table = table;
+    private byte[] nextChunk() throws IOException {
+        byte[] chunk = lookahead != null ? lookahead : takeChunk();
+        lookahead = null;
+        return chunk;
     }
 
-    public void seed() {
+    private byte[] takeChunk() throws IOException {
+        if (ended) return null;
         try {
-            Connection connection = DriverManager.getConnection(connectionUrl);
-            if (isTableSeeded(connection, table)) return;
-            runBatch(connection);
-            connection.close();
+            byte[] chunk = chunks.take();
+            if (chunk != END) return chunk;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while inflating");
         }
-        catch (SQLException e) {
-            e.printStackTrace();
+
+        ended = true;
+        if (failure != null) throw new IOException("Failed to inflate the source", failure);
+        return null;
+    }
+
+    private void inflate(InputStream compressed) {
+        try (InputStream in = new GZIPInputStream(compressed, 64 * 1024)) {
+            while (true) {
+                byte[] chunk = new byte[CHUNK_BYTES];
+                int filled = 0;
+                for (int read; filled < CHUNK_BYTES && (read = in.read(chunk, filled, CHUNK_BYTES - filled)) > 0; ) filled += read;
+
+                if (filled > 0) {
+                    chunks.put(filled == CHUNK_BYTES ? chunk : Arrays.copyOf(chunk, filled));
+                    inflated += filled;
+                }
+                if (filled < CHUNK_BYTES) break;
+            }
+            inflatedAll = true;
         } catch (IOException e) {
-            e.printStackTrace();
+            failure = e;
+        } catch (InterruptedException e) {
+            return;
         }
+
+        try {
+            chunks.put(END);
+        } catch (InterruptedException e) { }
     }
+}
 
-    protected abstract void runBatch(Connection connection) throws SQLException, IOException;
+final class DbConfig {
 
-    protected boolean isTableSeeded(Connection connection, String table) throws SQLException {
-        Statement selection = connection.createStatement();
-        ResultSet result = selection.executeQuery("select * from " + table);
-        return result.next();
+    private final String username;
+    private final String password;
+    private final SeedOptions seedOptions;
+    private final AnalyticsOptions analyticsOptions;
+    private final PoolOptions poolOptions;
+
+    public DbConfig(String username, String password, SeedOptions seedOptions, AnalyticsOptions analyticsOptions, PoolOptions poolOptions) {
+        this.username = username;
+        this.password = password;
+        this.seedOptions = seedOptions;
+        this.analyticsOptions = analyticsOptions;
+        this.poolOptions = poolOptions;
     }
-}
 
-final class CapitalRevenuesSeeder extends TableSeeder {
+    public String username() {
+        return username;
+    }
 
-    public CapitalRevenuesSeeder(String connectionUrl, String file, String table) {
-        super(connectionUrl, file, table);
+    public String password() {
+        return password;
     }
 
-    @Override
-    protected void runBatch(Connection connection) throws SQLException, IOException {
-        PreparedStatement insertion = connection.prepareStatement(SqlInsertion.CAPITAL_REVENUES);
-        BufferedReader reader = new BufferedReader(new FileReader(file));
-        reader.readLine();
+    public SeedOptions seedOptions() {
+        return seedOptions;
+    }
 
-        String record = "";
-        while ((record = reader.readLine()) != null) {
-            String[] cells = record.trim().split(Delimiter.SPACE);
-            insertion.setInt(1, Integer.parseInt(cells[0]));
-            insertion.setDouble(2, Double.parseDouble(cells[1]));
-            insertion.setDouble(3, Double.parseDouble(cells[2]));
-            insertion.setDouble(4, Double.parseDouble(cells[3]));
-            insertion.setDouble(5, Double.parseDouble(cells[4]));
-            insertion.addBatch();
-        }
+    public AnalyticsOptions analyticsOptions() {
+        return analyticsOptions;
+    }
 
-        insertion.executeBatch();
-        insertion.close();
-        reader.close();
-    } 
+    public PoolOptions poolOptions() {
+        return poolOptions;
+    }
 }
 
-final class CollectionExpendituresSeeder extends TableSeeder {
+// Optional seed.* keys of the config file
+final class SeedOptions {
 
-    public CollectionExpendituresSeeder(String connectionUrl, String file, String table) {
-        super(connectionUrl, file, table);
-    }
+    public static final SeedOptions DEFAULT = new SeedOptions(new Properties());
 
-    @Override
-    protected void runBatch(Connection connection) throws SQLException, IOException {
-        PreparedStatement insertion = connection.prepareStatement(SqlInsertion.COLLECTION_EXPENDITURES);
-        BufferedReader reader = new BufferedReader(new FileReader(file));
-        reader.readLine();
+    private final Properties props;
 
-        String record = "";
-        while ((record = reader.readLine()) != null) {
-            String[] cells = record.trim().split(Delimiter.SPACE);
-            insertion.setInt(1, Integer.parseInt(cells[0]));
-            insertion.setDouble(2, Double.parseDouble(cells[1]));
-            insertion.setDouble(3, Double.parseDouble(cells[2]));
-            insertion.setDouble(4, Double.parseDouble(cells[3]));
-            insertion.addBatch();
-        }
-        
-        insertion.executeBatch();
-        insertion.close();
-        reader.close();
+    public SeedOptions(Properties props) {
+        this.props = props;
     }
-}
 
-final class CountiesSeeder extends TableSeeder {
+    public int parallelism() {
+        return intOption("seed.parallelism", 4);
+    }
 
-    public CountiesSeeder(String connectionUrl, String file, String table) {
-        super(connectionUrl, file, table);
+    // Whether the report indexes are dropped before a load and built after it
+    public boolean indexes() {
+        return !props.getProperty("seed.indexes", "true").trim().equalsIgnoreCase("false");
     }
 
-    @Override
-    protected void runBatch(Connection connection) throws SQLException, IOException {
-        PreparedStatement insertion = connection.prepareStatement(SqlInsertion.COUNTIES);
-        BufferedReader reader = new BufferedReader(new FileReader(file));
-        reader.readLine();
+    // Writer connections draining the parsed chunks of one table
+    public int writers() {
+        return Math.max(1, intOption("seed.writers", 1));
+    }
 
-        String record = "";
-        while ((record = reader.readLine()) != null) {
-            String[] cells = record.trim().split(Delimiter.COMMA);
-            insertion.setInt(1, Integer.parseInt(cells[0]));
-            insertion.setInt(2, Integer.parseInt(cells[1]));
-            insertion.setInt(3, Integer.parseInt(cells[2]));
-            insertion.setString(4, cells[3]);
-            insertion.addBatch();
-        }
+    // Ranges a large source is parsed in at the same time
+    public int parseThreads() {
+        return Math.max(1, intOption("seed.parse.threads", Runtime.getRuntime().availableProcessors()));
+    }
 
-        insertion.executeBatch();
-        insertion.close();
-        reader.close();
+    // Sources smaller than this are parsed front to back, which keeps them resumable
+    public long splitBytes() {
+        return Math.max(0, intOption("seed.split.bytes", 64 * 1024 * 1024));
     }
-}
 
-final class DatabasesCountsSeeder extends TableSeeder {
+    // Chunks parsed ahead of the writers before parsing waits
+    public int ringBlocks() {
+        return Math.max(writers() + 1, intOption("seed.ring.blocks", 4));
+    }
 
-    public DatabasesCountsSeeder(String connectionUrl, String file, String table) {
-        super(connectionUrl, file, table);
+    public ChunkPolicy chunkPolicy() {
+        return new ChunkPolicy(
+            intOption("seed.chunk.rows", ChunkPolicy.DEFAULT.maxRows),
+            intOption("seed.chunk.bytes", (int) ChunkPolicy.DEFAULT.maxBytes));
     }
 
-    @Override
-    protected void runBatch(Connection connection) throws SQLException, IOException {
-        PreparedStatement insertion = connection.prepareStatement(SqlInsertion.DATABASES_COUNTS);
-        BufferedReader reader = new BufferedReader(new FileReader(file));
-        reader.readLine();
+    public String sink() {
+        return props.getProperty("seed.sink", SeedSinks.AUTO).trim();
+    }
 
-        String record = "";
-        while ((record = reader.readLine()) != null) {
-            String[] cells = record.trim().split(Delimiter.SPACE);
-            insertion.setInt(1, Integer.parseInt(cells[0]));
-            insertion.setInt(2, Integer.parseInt(cells[1]));
-            insertion.setInt(3, Integer.parseInt(cells[2]));
-            insertion.addBatch();
-        }
+    // Interval of the progress lines while seeding, 0 turns them off
+    public int progressMillis() {
+        return Math.max(0, intOption("seed.progress.ms", 1000));
+    }
 
-        insertion.executeBatch();
-        insertion.close();
-        reader.close();
+    // Where the metrics of the loads are written as JSON, blank to skip
+    public String metricsFile() {
+        return props.getProperty("seed.metrics.file", "seed-metrics.json").trim();
     }
-}
 
-final class EmployeeExpendituresSeeder extends TableSeeder {
+    // Directory of the data files, e.g. one written by SyntheticDataset
+    public String sourceDir() {
+        return props.getProperty("seed.dir", ".").trim();
+    }
 
-    public EmployeeExpendituresSeeder(String connectionUrl, String file, String table) {
-        super(connectionUrl, file, table);
+    private int intOption(String key, int fallback) {
+        String value = props.getProperty(key);
+        if (value == null || !Arithmetic.isInteger(value.trim())) return fallback;
+        return Integer.parseInt(value.trim());
     }
+}
 
-    @Override
-    protected void runBatch(Connection connection) throws SQLException, IOException {
-        PreparedStatement insertion = connection.prepareStatement(SqlInsertion.EMPLOYEE_EXPENDITURES);
-        BufferedReader reader = new BufferedReader(new FileReader(file));
-        reader.readLine();
+// Optional pool.* keys of the config file
+final class PoolOptions {
 
-        String record = "";
-        while ((record = reader.readLine()) != null) {
-            String[] cells = record.trim().split(Delimiter.SPACE);
-            insertion.setInt(1, Integer.parseInt(cells[0]));
+    private final Properties props;
 
-            if (cells.length > 1) {
-                insertion.setDouble(2, Double.parseDouble(cells[1]));
-                insertion.setDouble(3, Double.parseDouble(cells[2]));
-            } else {
-                insertion.setDouble(2, 0);
-                insertion.setDouble(3, 0);
-            }
-            insertion.addBatch();
-        }
+    public PoolOptions(Properties props) {
+        this.props = props;
+    }
 
-        insertion.executeBatch();
-        insertion.close();
-        reader.close();
+    // Connections opened when the pool starts
+    public int min() {
+        return Math.max(0, intOption("pool.min", 1));
     }
-}
 
-final class LibrariesSeeder extends TableSeeder {
+    // Most connections open at once, by default what the seeding settings need
+    public int max(int fallback) {
+        return intOption("pool.max", fallback);
+    }
 
-    public LibrariesSeeder(String connectionUrl, String file, String table) {
-        super(connectionUrl, file, table);
+    // How long a borrower waits for a connection when all are lent
+    public int timeoutMillis() {
+        return Math.max(0, intOption("pool.timeout.ms", 30000));
     }
 
-    @Override
-    protected void runBatch(Connection connection) throws SQLException, IOException {
-        PreparedStatement insertion = connection.prepareStatement(SqlInsertion.LIBRARIES);
-        BufferedReader reader = new BufferedReader(new FileReader(file));
-        reader.readLine();
+    // Idle connections older than this are validated before they are lent
+    public int validateMillis() {
+        return Math.max(0, intOption("pool.validate.ms", 30000));
+    }
 
-        String record = "";
-        while ((record = reader.readLine()) != null) {
-            String[] cells = record.trim().split(Delimiter.TAB);
-            insertion.setString(1, cells[0]);
-            insertion.setString(2, cells[1]);
-            insertion.setString(3, cells[2]);
-            insertion.setString(4, cells[3]);
-            insertion.setInt(5, Integer.parseInt(cells[4]));
-            insertion.setDouble(6, Double.parseDouble(cells[5]));
-            insertion.setDouble(7, Double.parseDouble(cells[6]));
-            insertion.setInt(8, Integer.parseInt(cells[13]));
-            insertion.setInt(9, Integer.parseInt(cells[14]));
-            insertion.setInt(10, Integer.parseInt(cells[7]));
-            insertion.setInt(11, Integer.parseInt(cells[8]));
-            insertion.setInt(12, Integer.parseInt(cells[9]));
-            insertion.setInt(13, Integer.parseInt(cells[10]));
-            insertion.setInt(14, Integer.parseInt(cells[11]));
-            insertion.setInt(15, Integer.parseInt(cells[12]));
-            insertion.addBatch();
-        }
+    // Connections older than this are closed instead of reused
+    public int lifetimeMillis() {
+        return Math.max(0, intOption("pool.lifetime.ms", 30 * 60 * 1000));
+    }
 
-        insertion.executeBatch();
-        insertion.close();
-        reader.close();
+    private int intOption(String key, int fallback) {
+        String value = props.getProperty(key);
+        if (value == null || !Arithmetic.isInteger(value.trim())) return fallback;
+        return Integer.parseInt(value.trim());
     }
 }
 
-final class OperatingRevenuesSeeder extends TableSeeder {
-
-    public OperatingRevenuesSeeder(String connectionUrl, String file, String table) {
-        super(connectionUrl, file, table);
-    }
+// Optional analytics.* keys of the config file
+final class AnalyticsOptions {
 
-    @Override
-    protected void runBatch(Connection connection) throws SQLException, IOException {
-        PreparedStatement insertion = connection.prepareStatement(SqlInsertion.OPERATING_REVENUES);
-        BufferedReader reader = new BufferedReader(new FileReader(file));
-        reader.readLine();
+    public static final String SQL = "sql", MEMORY = "memory";
 
-        String record = "";
-        while ((record = reader.readLine()) != null) {
-            String[] cells = record.trim().split(Delimiter.SPACE);
-            insertion.setInt(1, Integer.parseInt(cells[0]));
-            insertion.setDouble(2, Double.parseDouble(cells[1]));
-            insertion.setDouble(3, Double.parseDouble(cells[2]));
-            insertion.setDouble(4, Double.parseDouble(cells[3]));
-            insertion.setDouble(5, Double.parseDouble(cells[4]));
-            insertion.addBatch();
-        }
+    private final Properties props;
 
-        insertion.executeBatch();
-        insertion.close();
-        reader.close();
+    public AnalyticsOptions(Properties props) {
+        this.props = props;
     }
-}
 
-final class SchoolsSeeder extends TableSeeder {
+    // Whether the reports start on the in-memory engine instead of the database
+    public boolean inMemory() {
+        return props.getProperty("analytics.backend", SQL).trim().equalsIgnoreCase(MEMORY);
+    }
 
-    public SchoolsSeeder(String connectionUrl, String file, String table) {
-        super(connectionUrl, file, table);
+    // Data files the in-memory engine loads, by default the ones the database is seeded from
+    public String dataDir() {
+        return props.getProperty("analytics.dir", new SeedOptions(props).sourceDir()).trim();
     }
 
+    // Snapshot file the in-memory engine maps instead of parsing the data files, blank to always parse
+    public String snapshot() {
+        return props.getProperty("analytics.snapshot", "reports.snapshot").trim();
+    }
 
-    @Override
-    protected void runBatch(Connection connection) throws SQLException, IOException {
-        PreparedStatement insertion = connection.prepareStatement(SqlInsertion.SCHOOLS);
+    // Query timeout of a report: analytics.timeout.s.<key>, else analytics.timeout.s, 0 for no limit
+    public int timeoutSeconds(int key) {
+        int fallback = intOption("analytics.timeout.s", 120);
+        return Math.max(0, intOption("analytics.timeout.s." + key, fallback));
+    }
 
-        new SchoolsReader(file).read().forEach(record -> {
-            try {
-                String[] cells = record.trim().split(Delimiter.COMMA);
-                insertion.setInt(1, Integer.parseInt(cells[0]));
-                insertion.setString(2, cells[1]);
-                insertion.setInt(3, Integer.parseInt(cells[2]));
-                insertion.addBatch();
-            } catch (SQLException e) {
-                e.printStackTrace();
-            }
-        });
+    private int intOption(String key, int fallback) {
+        String value = props.getProperty(key);
+        if (value == null || !Arithmetic.isInteger(value.trim())) return fallback;
+        return Integer.parseInt(value.trim());
+    }
+}
 
-        insertion.executeBatch();
-        insertion.close(); 
+// Synthetic data
+// Writes the data files scaled by a whole factor, in the formats the seeders
+// read. Libraries and their metric rows are bootstrap samples of the real
+// ones with jittered numbers, counties and schools are replicated under new
+// codes, so every foreign key of the scaled files resolves. The same seed
+// writes the same files. States are not scaled and stay in the working directory
+final class SyntheticDataset {
+
+    public static final long DEFAULT_SEED = 3380;
+
+    // Spread of the log-normal factor applied to every amount
+    private static final double AMOUNT_JITTER = 0.1;
+    private static final double COORDINATE_JITTER = 0.05;
+
+    // Replica k of a county or school code is code + k * offset
+    private static final int COUNTY_CODE_OFFSET = 1000;
+    private static final int SCHOOL_CODE_OFFSET = 10000;
+
+    private static final String LIBRARIES_FILE = "library.txt";
+    private static final String COUNTIES_FILE = "county.csv";
+    private static final String SCHOOLS_FILE = "schools.txt";
+
+    // Column of library.txt holding each metric file's id, in the order of METRIC_FILES
+    private static final int FIRST_METRIC_COLUMN = 7;
+    private static final String[] METRIC_FILES = {
+        "staff_members_counts.txt",
+        "operating_revenues.txt",
+        "employee_expenditures.txt",
+        "collection_expenditures.txt",
+        "capital_revenues.txt",
+        "databases_counts.txt"
+    };
+
+    private final int scale;
+    private final long seed;
+    private final String dir;
+
+    private SyntheticDataset(int scale, long seed, String dir) {
+        this.scale = scale;
+        this.seed = seed;
+        this.dir = dir;
     }
 
-    private static class SchoolsReader {
-        private final String file;
+    public static void generate(int scale, long seed, String dir) {
+        if (scale < 1) throw new IllegalArgumentException("Scale factor must be at least 1: " + scale);
 
-        public SchoolsReader(String file) {
-            this.file = file;
+        try {
+            Files.createDirectories(Paths.get(dir));
+            SyntheticDataset dataset = new SyntheticDataset(scale, seed, dir);
+            dataset.writeCounties();
+            dataset.writeSchools();
+            dataset.writeLibraries();
+            System.out.println("Wrote the data files at scale x" + scale + " to " + dir + ", seed " + seed);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
         }
+    }
 
-        public List<String> read() {
-            List<String> schools = new ArrayList<>();
-            Map<String, String> states = readStates(); // // NAME -> AA
-            Map<String, String> stateCodes = readStateCodes(); // AA - 1
-            try {
-                BufferedReader reader = new BufferedReader(new FileReader(file));
-                reader.readLine();
-                String record = "";
-                String state = "";
-                while ((record = reader.readLine()) != null) {
-                    String[] cells = record.trim().split(Delimiter.TAB);
-                    if (cells.length == 1) state = cells[0];
-                    else {
-                        String stateCode = stateCodes.get(states.get(state));
-                        if (stateCode == null) continue;
-                        String school = cells[0] + Delimiter.COMMA + cells[1] + Delimiter.COMMA + stateCodes.get(states.get(state));
-                        schools.add(school);
-                    }
+    private void writeCounties() throws IOException {
+        Random random = random(COUNTIES_FILE);
+        List<String[]> counties = read(COUNTIES_FILE, SourceTokenizer.COMMA);
+
+        try (BufferedWriter out = writer(COUNTIES_FILE)) {
+            line(out, Delimiter.COMMA, counties.get(0));
+            for (int replica = 0; replica < scale; replica++) {
+                for (String[] county : counties.subList(1, counties.size())) {
+                    int code = Integer.parseInt(county[1]) + replica * COUNTY_CODE_OFFSET;
+                    String name = replica == 0 ? county[3] : county[3] + " " + (replica + 1);
+                    line(out, Delimiter.COMMA, county[0], String.valueOf(code), jitter(county[2], random), csvCell(name));
                 }
-                reader.close();
-            } catch (IOException e) {
-                e.printStackTrace();
             }
-            
-            return schools;
         }
-    
-        private Map<String, String> readStates() {
-            Map<String, String> states = new HashMap<>();
-            try {
-                BufferedReader reader = new BufferedReader(new FileReader("state_code_and_names.txt"));
-                String record = "";
-                while ((record = reader.readLine()) != null) {
-                    String[] cells = record.trim().split(Delimiter.TAB);
-                    states.put(cells[1].toUpperCase(), cells[0]);
+    }
+
+    // Each state keeps its header line, followed by all replicas of its schools
+    private void writeSchools() throws IOException {
+        List<String[]> records = read(SCHOOLS_FILE, SourceTokenizer.TAB);
+
+        try (BufferedWriter out = writer(SCHOOLS_FILE)) {
+            List<String[]> schools = new ArrayList<>();
+            for (String[] record : records) {
+                if (record.length == 1) {
+                    writeSchools(out, schools);
+                    line(out, Delimiter.TAB, record);
+                } else {
+                    schools.add(record);
                 }
-                reader.close();
-            } catch (IOException e) {
-                e.printStackTrace();
             }
-    
-            return states;
+            writeSchools(out, schools);
         }
+    }
 
-        private Map<String, String> readStateCodes() {
-            Map<String, String> stateCodes = new HashMap<>();
-            try {
-                BufferedReader reader = new BufferedReader(new FileReader("states.txt"));
-                String record = "";
-                reader.readLine();
-                while ((record = reader.readLine()) != null) {
-                    String[] cells = record.trim().split(Delimiter.SPACE);
-                    stateCodes.put(cells[1], cells[0]);
+    private void writeSchools(BufferedWriter out, List<String[]> schools) throws IOException {
+        for (int replica = 0; replica < scale; replica++) {
+            for (String[] school : schools) {
+                if (replica == 0) {
+                    line(out, Delimiter.TAB, school);
+                    continue;
                 }
-                reader.close();
-            } catch (IOException e) {
-                e.printStackTrace();
+                int code = Integer.parseInt(school[0]) + replica * SCHOOL_CODE_OFFSET;
+                line(out, Delimiter.TAB, String.valueOf(code), school[1] + " " + (replica + 1));
             }
-    
-            return stateCodes;
         }
+        schools.clear();
     }
 
-}
-
-final class StaffMembersCountsSeeder extends TableSeeder {
+    // Library n of the output references row n of every metric file, which
+    // is a jittered copy of the metric row of the sampled library
+    private void writeLibraries() throws IOException {
+        Random random = random(LIBRARIES_FILE);
+        List<String[]> libraries = read(LIBRARIES_FILE, SourceTokenizer.TAB);
 
-    public StaffMembersCountsSeeder(String connectionUrl, String file, String table) {
-        super(connectionUrl, file, table);
-    }
+        List<Map<String, String[]>> metrics = new ArrayList<>();
+        List<BufferedWriter> metricWriters = new ArrayList<>();
+        List<Random> metricRandoms = new ArrayList<>();
+        Map<String, Integer> idsByState = new HashMap<>();
 
-    @Override
-    protected void runBatch(Connection connection) throws SQLException, IOException {
-        PreparedStatement insertion = connection.prepareStatement(SqlInsertion.STAFF_MEMBERS_COUNTS);
-        BufferedReader reader = new BufferedReader(new FileReader(file));
-        reader.readLine();
+        try {
+            for (String file : METRIC_FILES) {
+                List<String[]> rows = read(file, SourceTokenizer.WHITESPACE);
+                Map<String, String[]> byId = new HashMap<>();
+                for (String[] row : rows.subList(1, rows.size())) byId.put(row[0], row);
+                metrics.add(byId);
+
+                BufferedWriter out = writer(file);
+                line(out, Delimiter.TAB, header(file));
+                metricWriters.add(out);
+                metricRandoms.add(random(file));
+            }
 
-        String record = "";
-        while ((record = reader.readLine()) != null) {
-            String[] cells = record.trim().split(Delimiter.SPACE);
-            insertion.setInt(1, Integer.parseInt(cells[0]));
-            insertion.setDouble(2, Double.parseDouble(cells[1]));
-            insertion.setDouble(3, Double.parseDouble(cells[2]));
-            insertion.addBatch();
+            try (BufferedWriter out = writer(LIBRARIES_FILE)) {
+                line(out, Delimiter.TAB, libraries.get(0));
+
+                int count = (libraries.size() - 1) * scale;
+                for (int id = 1; id <= count; id++) {
+                    String[] library = libraries.get(1 + random.nextInt(libraries.size() - 1)).clone();
+                    int replica = random.nextInt(scale);
+
+                    String alphaCode = library[0].substring(0, 2);
+                    int number = idsByState.merge(alphaCode, 1, Integer::sum);
+                    library[0] = alphaCode + String.format("%04d", number);
+                    library[5] = jitterCoordinate(library[5], random);
+                    library[6] = jitterCoordinate(library[6], random);
+                    library[14] = String.valueOf(Integer.parseInt(library[14]) + replica * COUNTY_CODE_OFFSET);
+
+                    for (int m = 0; m < METRIC_FILES.length; m++) {
+                        String[] metric = metrics.get(m).get(library[FIRST_METRIC_COLUMN + m]);
+                        library[FIRST_METRIC_COLUMN + m] = String.valueOf(id);
+                        writeMetric(metricWriters.get(m), id, metric, metricRandoms.get(m));
+                    }
+                    line(out, Delimiter.TAB, library);
+                }
+            }
+        } finally {
+            for (BufferedWriter out : metricWriters) out.close();
         }
-        
-        insertion.executeBatch();
-        insertion.close();
-        reader.close();
     }
-}
 
-final class StatesSeeder extends TableSeeder {
+    // Blank amounts stay blank, as employee_expenditures.txt has them
+    private void writeMetric(BufferedWriter out, int id, String[] metric, Random random) throws IOException {
+        String[] row = new String[metric.length];
+        row[0] = String.valueOf(id);
+        for (int i = 1; i < metric.length; i++) row[i] = jitter(metric[i], random);
+        line(out, Delimiter.TAB, row);
+    }
 
-    public StatesSeeder(String connectionUrl, String file, String table) {
-        super(connectionUrl, file, table);
+    // Scales an amount by a random factor around 1, keeping its decimals. Zeros stay zero
+    private static String jitter(String amount, Random random) {
+        BigDecimal value = new BigDecimal(amount);
+        if (value.signum() == 0) return amount;
+        double factor = Math.exp(random.nextGaussian() * AMOUNT_JITTER);
+        return BigDecimal.valueOf(value.doubleValue() * factor).setScale(value.scale(), RoundingMode.HALF_UP).toPlainString();
     }
 
-    @Override
-    protected void runBatch(Connection connection) throws SQLException, IOException {
-        PreparedStatement insertion = connection.prepareStatement(SqlInsertion.STATES);
-        BufferedReader reader = new BufferedReader(new FileReader(file));
-        reader.readLine();
+    private static String jitterCoordinate(String coordinate, Random random) {
+        BigDecimal value = new BigDecimal(coordinate);
+        return BigDecimal.valueOf(value.doubleValue() + random.nextGaussian() * COORDINATE_JITTER).setScale(value.scale(), RoundingMode.HALF_UP).toPlainString();
+    }
 
-        String record = "";
-        while ((record = reader.readLine()) != null) {
-            String[] cells = record.trim().split(Delimiter.SPACE);
-            insertion.setInt(1, Integer.parseInt(cells[0]));
-            insertion.setString(2, cells[1]);
-            insertion.addBatch();
-        }
-        
-        insertion.executeBatch();
-        insertion.close();
-        reader.close();
+    private static String csvCell(String cell) {
+        if (cell.indexOf(',') < 0 && cell.indexOf('"') < 0) return cell;
+        return '"' + cell.replace("\"", "\"\"") + '"';
     }
-}
 
-final class DbConfig {
+    // Every file draws from its own stream, so changing one leaves the others as they were
+    private Random random(String file) {
+        return new Random(seed * 31 + file.hashCode());
+    }
 
-    private final String username;
-    private final String password;
+    private BufferedWriter writer(String file) throws IOException {
+        return Files.newBufferedWriter(Paths.get(dir, file), StandardCharsets.UTF_8);
+    }
 
-    public DbConfig(String username, String password) {
-        this.username = username;
-        this.password = password;
+    private static void line(BufferedWriter out, String delimiter, String... cells) throws IOException {
+        out.write(String.join(delimiter, cells));
+        out.write(Delimiter.NEW_LINE);
     }
 
-    public String username() {
-        return username;
+    // Header line as written, where whitespace splitting would break up its titles
+    private static String header(String file) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+            return reader.readLine();
+        }
     }
 
-    public String password() {
-        return password;
+    private static List<String[]> read(String file, byte delimiter) throws IOException {
+        List<String[]> records = new ArrayList<>();
+        try (SourceTokenizer cells = SourceTokenizer.open(file, delimiter)) {
+            while (cells.nextRecord()) {
+                List<String> record = new ArrayList<>();
+                while (cells.hasNextCell()) record.add(cells.nextString());
+                records.add(record.toArray(new String[0]));
+            }
+        }
+        return records;
     }
 }
 
@@ -1718,6 +6872,64 @@ final class Benchmark {
     }
 }
 
+// Times tokenizing every data file as is and gzip compressed. Files
+// without a .gz next to them are compressed into a temporary directory
+final class SourceBenchmark {
+
+    private static final int RUNS = 3;
+
+    public static void run(String dir) {
+        try {
+            Path compressedDir = Files.createTempDirectory("sources-gz");
+            Map<String, Byte> files = new LinkedHashMap<>();
+            for (TableMapping mapping : TableMappings.ALL) files.put(mapping.file, mapping.delimiter);
+            files.put("schools.txt", SourceTokenizer.TAB);
+
+            System.out.println(String.format("%-28s %-32s | %s", "", "raw", "gzip (MB/s of uncompressed bytes)"));
+            for (Map.Entry<String, Byte> file : files.entrySet()) {
+                String raw = Paths.get(dir, file.getKey()).toString();
+                if (!Files.exists(Paths.get(raw))) continue;
+                String compressed = raw + SourceTokenizer.GZIP_SUFFIX;
+                if (!Files.exists(Paths.get(compressed))) compressed = compress(raw, compressedDir);
+
+                long rawBytes = Files.size(Paths.get(raw)), compressedBytes = Files.size(Paths.get(compressed));
+                double rawSeconds = best(raw, file.getValue()), compressedSeconds = best(compressed, file.getValue());
+                System.out.println(String.format(
+                    "%-28s %7.1f MB %7.1f ms %5.0f MB/s | %7.1f MB %7.1f ms %5.0f MB/s",
+                    file.getKey(),
+                    rawBytes / 1e6, rawSeconds * 1e3, rawBytes / 1e6 / rawSeconds,
+                    compressedBytes / 1e6, compressedSeconds * 1e3, rawBytes / 1e6 / compressedSeconds));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // Fastest of a few full passes over the cells, in seconds
+    private static double best(String file, byte delimiter) throws IOException {
+        double best = Double.MAX_VALUE;
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            try (SourceTokenizer cells = SourceTokenizer.open(file, delimiter)) {
+                while (cells.nextRecord()) {
+                    while (cells.hasNextCell()) cells.skipCell();
+                }
+            }
+            best = Math.min(best, (System.nanoTime() - start) / 1e9);
+        }
+        return best;
+    }
+
+    private static String compress(String file, Path dir) throws IOException {
+        Path compressed = dir.resolve(Paths.get(file).getFileName() + SourceTokenizer.GZIP_SUFFIX);
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(compressed))) {
+            Files.copy(Paths.get(file), out);
+        }
+        compressed.toFile().deleteOnExit();
+        return compressed.toString();
+    }
+}
+
 final class SqlServer {
 
     public static String connectionUrl(String username, String password) {
@@ -1732,6 +6944,345 @@ final class SqlServer {
     
 }
 
+// Connections to one database kept open between uses, shared by the
+// reports and the seeders. Holds up to pool.max connections and opens
+// pool.min up front; a borrower waits up to pool.timeout.ms for a
+// connection to come back when all are lent. A connection idle for longer
+// than pool.validate.ms is validated before it is lent again, one older
+// than pool.lifetime.ms is closed instead of reused, and one that failed
+// is closed and replaced. Closing a borrowed connection hands it back
+// with the statements opened through it closed and an unfinished
+// transaction rolled back. Statements of its StatementCache stay prepared
+final class ConnectionPool implements AutoCloseable {
+
+    // Implemented by borrowed connections
+    interface Lease {
+        StatementCache statements();
+
+        // Keeps the connection from being lent again, for failures seen outside the connection itself
+        void invalidate();
+    }
+
+    private static final int VALIDATION_SECONDS = 5;
+
+    private final String url;
+    private final int min, max;
+    private final long timeoutNanos, validateNanos, lifetimeNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition returned = lock.newCondition();
+    private final Deque<Pooled> idle = new ArrayDeque<>();
+    private final Set<Pooled> open = new HashSet<>();
+    private int opening;
+    private boolean closed;
+
+    private long borrows, waits, waitNanos, maxWaitNanos, timeouts, opened, replaced, retired;
+
+    public ConnectionPool(String url, PoolOptions options, int defaultMax) {
+        this.url = url;
+        this.max = Math.max(1, options.max(defaultMax));
+        this.min = Math.min(options.min(), max);
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(options.timeoutMillis());
+        this.validateNanos = TimeUnit.MILLISECONDS.toNanos(options.validateMillis());
+        this.lifetimeNanos = TimeUnit.MILLISECONDS.toNanos(options.lifetimeMillis());
+    }
+
+    // Sized for every table seeder and its writers to hold a connection at once, next to the reports
+    public static ConnectionPool of(DbConfig config) {
+        SeedOptions seeding = config.seedOptions();
+        return new ConnectionPool(
+            SqlServer.connectionUrl(config.username(), config.password()),
+            config.poolOptions(),
+            seeding.parallelism() * (seeding.writers() + 1) + 2);
+    }
+
+    public String url() {
+        return url;
+    }
+
+    // Opens the minimum number of connections, failing when the database cannot be reached
+    public void prefill() throws SQLException {
+        List<Connection> borrowed = new ArrayList<>();
+        try {
+            for (int i = 0; i < Math.max(1, min); i++) borrowed.add(borrow());
+        } finally {
+            for (Connection connection : borrowed) connection.close();
+        }
+    }
+
+    public Connection borrow() throws SQLException {
+        long start = System.nanoTime();
+        Pooled pooled;
+
+        lock.lock();
+        try {
+            boolean waited = false;
+            while (true) {
+                if (closed) throw new SQLException("The connection pool is closed");
+                pooled = idle.pollFirst();
+                if (pooled != null) break;
+                if (open.size() + opening < max) {
+                    opening++;
+                    break;
+                }
+
+                long remaining = start + timeoutNanos - System.nanoTime();
+                if (remaining <= 0) {
+                    timeouts++;
+                    throw new SQLException("Timed out after " + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + " ms waiting for one of " + max + " connections");
+                }
+                waited = true;
+                returned.awaitNanos(remaining);
+            }
+
+            long waiting = System.nanoTime() - start;
+            borrows++;
+            if (waited) waits++;
+            waitNanos += waiting;
+            maxWaitNanos = Math.max(maxWaitNanos, waiting);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted waiting for a connection", e);
+        } finally {
+            lock.unlock();
+        }
+
+        if (pooled != null && !usable(pooled)) pooled = null;
+        return (pooled != null ? pooled : connect()).lease();
+    }
+
+    // An idle connection past its lifetime, or failing validation, is
+    // closed and its slot taken over by a new connection
+    private boolean usable(Pooled pooled) {
+        long now = System.nanoTime();
+        boolean expired = now - pooled.created > lifetimeNanos;
+        boolean valid = !expired && (now - pooled.lastUsed < validateNanos || isValid(pooled));
+        if (valid) return true;
+
+        lock.lock();
+        try {
+            open.remove(pooled);
+            opening++;
+            if (expired) retired++;
+            else replaced++;
+        } finally {
+            lock.unlock();
+        }
+        pooled.close();
+        return false;
+    }
+
+    private static boolean isValid(Pooled pooled) {
+        try {
+            return pooled.physical.isValid(VALIDATION_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    // Opens the connection of a slot counted in opening
+    private Pooled connect() throws SQLException {
+        Pooled pooled = null;
+        try {
+            pooled = new Pooled(DriverManager.getConnection(url));
+        } finally {
+            lock.lock();
+            try {
+                opening--;
+                if (pooled != null) {
+                    open.add(pooled);
+                    opened++;
+                } else {
+                    returned.signal();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return pooled;
+    }
+
+    private void release(Pooled pooled, boolean broken) {
+        boolean reusable = !broken && System.nanoTime() - pooled.created <= lifetimeNanos && pooled.reset();
+
+        boolean refill;
+        lock.lock();
+        try {
+            if (reusable && !closed) {
+                pooled.lastUsed = System.nanoTime();
+                idle.addFirst(pooled);
+                returned.signal();
+                return;
+            }
+
+            open.remove(pooled);
+            if (broken) replaced++;
+            else retired++;
+            refill = !closed && open.size() + opening < min;
+            if (refill) opening++;
+            else returned.signal();
+        } finally {
+            lock.unlock();
+        }
+
+        pooled.close();
+        if (!refill) return;
+        try {
+            release(connect(), false);
+        } catch (SQLException e) {
+            // The next borrower opens the connection instead
+        }
+    }
+
+    // Errors of the connection itself rather than of a statement
+    public static boolean isConnectionFailure(SQLException e) {
+        return e instanceof SQLNonTransientConnectionException
+            || e instanceof SQLRecoverableException
+            || e.getSQLState() != null && e.getSQLState().startsWith("08");
+    }
+
+    // Statement caches of the open connections
+    public List<StatementCache> statementCaches() {
+        lock.lock();
+        try {
+            List<StatementCache> caches = new ArrayList<>();
+            for (Pooled pooled : open) caches.add(pooled.statements);
+            return caches;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public String summary() {
+        lock.lock();
+        try {
+            return String.format(
+                "Connection pool: %d open, %d idle, max %d | %d borrows, %d waited %.1f ms (max %.1f ms), %d timed out | %d opened, %d replaced, %d retired",
+                open.size(), idle.size(), max, borrows, waits, waitNanos / 1e6, maxWaitNanos / 1e6, timeouts, opened, replaced, retired);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Closes the idle connections, and the lent ones when they come back
+    @Override
+    public void close() {
+        List<Pooled> closing;
+        lock.lock();
+        try {
+            closed = true;
+            closing = new ArrayList<>(idle);
+            open.removeAll(idle);
+            idle.clear();
+            returned.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        for (Pooled pooled : closing) pooled.close();
+    }
+
+    private final class Pooled {
+        final Connection physical;
+        final StatementCache statements;
+        final long created = System.nanoTime();
+        long lastUsed = created;
+
+        Pooled(Connection physical) {
+            this.physical = physical;
+            this.statements = new StatementCache(physical);
+        }
+
+        Connection lease() {
+            Borrowed borrowed = new Borrowed(this);
+            return (Connection) Proxy.newProxyInstance(
+                ConnectionPool.class.getClassLoader(), new Class<?>[] { Connection.class, Lease.class }, borrowed);
+        }
+
+        // Back to auto-commit, false when the connection did not take it
+        boolean reset() {
+            try {
+                if (physical.isClosed()) return false;
+                if (!physical.getAutoCommit()) {
+                    physical.rollback();
+                    physical.setAutoCommit(true);
+                }
+                return true;
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        void close() {
+            try {
+                statements.close();
+            } catch (SQLException e) { }
+            try {
+                physical.close();
+            } catch (SQLException e) { }
+        }
+    }
+
+    // One loan of a connection. Calls after close fail; a connection
+    // failure marks the connection broken so it is not lent again
+    private final class Borrowed implements InvocationHandler {
+        private final Pooled pooled;
+        private final List<Statement> statements = new ArrayList<>();
+        private boolean returned, broken;
+
+        Borrowed(Pooled pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!returned) giveBack();
+                    return null;
+                case "isClosed":
+                    if (returned) return true;
+                    break;
+                case "statements":
+                    return pooled.statements;
+                case "invalidate":
+                    broken = true;
+                    return null;
+                case "unwrap":
+                    if (((Class<?>) args[0]).isInstance(pooled.physical)) return pooled.physical;
+                    break;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled " + pooled.physical;
+            }
+
+            if (returned) throw new SQLException("The connection was returned to the pool");
+            try {
+                Object result = method.invoke(pooled.physical, args);
+                if (result instanceof Statement) statements.add((Statement) result);
+                return result;
+            } catch (InvocationTargetException e) {
+                if (e.getCause() instanceof SQLException && isConnectionFailure((SQLException) e.getCause())) broken = true;
+                throw e.getCause();
+            }
+        }
+
+        private void giveBack() {
+            returned = true;
+            for (Statement statement : statements) {
+                try {
+                    statement.close();
+                } catch (SQLException e) {
+                    broken |= isConnectionFailure(e);
+                }
+            }
+            release(pooled, broken);
+        }
+    }
+}
+
 final class SqlReader {
 
     public static String[] read(String file) {
@@ -1778,7 +7329,7 @@ final class ConfigReader {
             System.exit(1);
         }
 
-        return new DbConfig(username, password);
+        return new DbConfig(username, password, new SeedOptions(props), new AnalyticsOptions(props), new PoolOptions(props));
     }
 }
 
@@ -1823,90 +7374,255 @@ final class Table {
 
 }
 
+// Brings a database created from an older command.sql up to date
+final class SqlSchemaUpgrade {
+
+    public static final String
+
+        COORDINATES_NUMERIC =
+        "select 1 from information_schema.columns " +
+        "where table_name = 'libraries' and column_name = 'latitude' and data_type = 'numeric'",
+
+        WIDEN_LATITUDE = "alter table libraries alter column latitude float not null",
+
+        WIDEN_LONGITUDE = "alter table libraries alter column longitude float not null";
+}
+
+final class SqlSeedManifest {
+
+    public static final String
+
+        CREATE =
+        "if object_id('seed_manifest') is null " +
+        "create table seed_manifest (" +
+            "table_name varchar(100) primary key," +
+            "source_file varchar(1000) not null," +
+            "file_size bigint not null," +
+            "checksum char(64) not null," +
+            "row_count bigint not null," +
+            "seeded_at datetime2 not null default sysutcdatetime()" +
+        ")",
+
+        CLEAR = "delete from seed_manifest",
+
+        SELECT = "select table_name, file_size, checksum from seed_manifest",
+
+        DELETE = "delete from seed_manifest where table_name = ?",
+
+        INSERT =
+        "insert into seed_manifest(" +
+            "table_name," +
+            "source_file," +
+            "file_size," +
+            "checksum," +
+            "row_count" +
+        ") values(?,?,?,?,?)";
+}
+
+final class SqlSeedCheckpoint {
+
+    public static final String
+
+        CREATE =
+        "if object_id('seed_checkpoints') is null " +
+        "create table seed_checkpoints (" +
+            "table_name varchar(100) primary key," +
+            "target_table varchar(100) not null," +
+            "checksum char(64) not null," +
+            "byte_offset bigint not null," +
+            "last_key varchar(200)," +
+            "row_count bigint not null," +
+            "updated_at datetime2 not null default sysutcdatetime()" +
+        ")",
+
+        CLEAR = "delete from seed_checkpoints",
+
+        SELECT = "select target_table, checksum, byte_offset, last_key, row_count from seed_checkpoints where table_name = ?",
+
+        UPDATE = "update seed_checkpoints set byte_offset = ?, last_key = ?, row_count = ?, updated_at = sysutcdatetime() where table_name = ?",
+
+        INSERT =
+        "insert into seed_checkpoints(" +
+            "table_name," +
+            "target_table," +
+            "checksum," +
+            "byte_offset," +
+            "last_key," +
+            "row_count" +
+        ") values(?,?,?,?,?,?)",
+
+        DELETE = "delete from seed_checkpoints where table_name = ?";
+}
+
+// How the cells of each source file map to table columns
+final class TableMappings {
+
+    public static final TableMapping
+
+        CAPITAL_REVENUES = TableMapping.of(Table.T_CAPITAL_REVENUES, "capital_revenues.txt", SourceTokenizer.WHITESPACE)
+            .intColumn(0, "capital_revenue_id")
+            .doubleColumn(1, "local_government_capital_revenue")
+            .doubleColumn(2, "state_government_capital_revenue")
+            .doubleColumn(3, "federal_government_capital_revenue")
+            .doubleColumn(4, "other_capital_revenue"),
+
+        COLLECTION_EXPENDITURES = TableMapping.of(Table.T_COLLECTION_EXPENDITURES, "collection_expenditures.txt", SourceTokenizer.WHITESPACE)
+            .intColumn(0, "collection_expenditure_id")
+            .doubleColumn(1, "print_collection_expenditures")
+            .doubleColumn(2, "digital_collection_expenditures")
+            .doubleColumn(3, "other_collection_expenditures"),
+
+        COUNTIES = TableMapping.of(Table.T_COUNTIES, "county.csv", SourceTokenizer.COMMA)
+            .intColumn(0, "state_code")
+            .intColumn(1, "county_code")
+            .intColumn(2, "county_population")
+            .stringColumn(3, "county_name")
+            .keys("state_code", "county_code"),
+
+        DATABASES_COUNTS = TableMapping.of(Table.T_DATABASES_COUNTS, "databases_counts.txt", SourceTokenizer.WHITESPACE)
+            .intColumn(0, "databases_count_id")
+            .intColumn(1, "local_cooperative_agreements")
+            .intColumn(2, "state_licensed_databases"),
+
+        // Libraries without reported expenditures have blank cells after the id
+        EMPLOYEE_EXPENDITURES = TableMapping.of(Table.T_EMPLOYEE_EXPENDITURES, "employee_expenditures.txt", SourceTokenizer.WHITESPACE)
+            .intColumn(0, "employee_expenditure_id")
+            .column(1, "salaries", TableMapping.Type.DOUBLE, TableMapping.Blank.ZERO)
+            .column(2, "benefits", TableMapping.Type.DOUBLE, TableMapping.Blank.ZERO),
+
+        LIBRARIES = TableMapping.of(Table.T_LIBRARIES, "library.txt", SourceTokenizer.TAB)
+            .stringColumn(0, "library_id")
+            .stringColumn(1, "library_name")
+            .stringColumn(2, "street_address")
+            .stringColumn(3, "city")
+            .intColumn(4, "zipcode")
+            .floatColumn(5, "longitude")
+            .floatColumn(6, "latitude")
+            .intColumn(13, "state_code")
+            .intColumn(14, "county_code")
+            .intColumn(7, "staff_members_count_id")
+            .intColumn(8, "operating_revenue_id")
+            .intColumn(9, "employee_expenditure_id")
+            .intColumn(10, "collection_expenditure_id")
+            .intColumn(11, "capital_revenue_id")
+            .intColumn(12, "databases_count_id"),
+
+        OPERATING_REVENUES = TableMapping.of(Table.T_OPERATING_REVENUES, "operating_revenues.txt", SourceTokenizer.WHITESPACE)
+            .intColumn(0, "operating_revenue_id")
+            .doubleColumn(1, "local_government_operating_revenue")
+            .doubleColumn(2, "state_government_operating_revenue")
+            .doubleColumn(3, "federal_government_operating_revenue")
+            .doubleColumn(4, "other_operating_revenue"),
+
+        STAFF_MEMBERS_COUNTS = TableMapping.of(Table.T_STAFF_MEMBERS_COUNTS, "staff_members_counts.txt", SourceTokenizer.WHITESPACE)
+            .intColumn(0, "staff_members_count_id")
+            .doubleColumn(1, "librarians")
+            .doubleColumn(2, "employees"),
+
+        STATES = TableMapping.of(Table.T_STATES, "states.txt", SourceTokenizer.WHITESPACE)
+            .intColumn(0, "state_code")
+            .stringColumn(1, "state_alpha_code");
+
+    public static final List<TableMapping> ALL = Arrays.asList(
+        CAPITAL_REVENUES, COLLECTION_EXPENDITURES, COUNTIES, DATABASES_COUNTS, EMPLOYEE_EXPENDITURES,
+        LIBRARIES, OPERATING_REVENUES, STAFF_MEMBERS_COUNTS, STATES);
+
+}
+
+// Source file of a table and, in insertion order, where each column's value
+// is read from. Keys default to the first column
+final class TableMapping {
+
+    // DOUBLE values bind to numeric(18,0) columns, rounded to whole numbers; FLOAT ones to float columns as read
+    enum Type { INT, DOUBLE, FLOAT, STRING }
+
+    // What a missing or empty cell becomes: an error, or zero / the empty string
+    enum Blank { REQUIRED, ZERO }
+
+    static final class ColumnMapping {
+        final int source;
+        final String column;
+        final Type type;
+        final Blank blank;
+
+        ColumnMapping(int source, String column, Type type, Blank blank) {
+            this.source = source;
+            this.column = column;
+            this.type = type;
+            this.blank = blank;
+        }
+    }
+
+    final String table, file;
+    final byte delimiter;
+    private final List<ColumnMapping> columns = new ArrayList<>();
+    private String[] keys;
+
+    private TableMapping(String table, String file, byte delimiter) {
+        this.table = table;
+        this.file = file;
+        this.delimiter = delimiter;
+    }
+
+    public static TableMapping of(String table, String file, byte delimiter) {
+        return new TableMapping(table, file, delimiter);
+    }
+
+    public TableMapping column(int source, String column, Type type, Blank blank) {
+        columns.add(new ColumnMapping(source, column, type, blank));
+        return this;
+    }
+
+    public TableMapping intColumn(int source, String column) {
+        return column(source, column, Type.INT, Blank.REQUIRED);
+    }
+
+    public TableMapping doubleColumn(int source, String column) {
+        return column(source, column, Type.DOUBLE, Blank.REQUIRED);
+    }
+
+    public TableMapping floatColumn(int source, String column) {
+        return column(source, column, Type.FLOAT, Blank.REQUIRED);
+    }
+
+    public TableMapping stringColumn(int source, String column) {
+        return column(source, column, Type.STRING, Blank.REQUIRED);
+    }
+
+    public TableMapping keys(String... keys) {
+        this.keys = keys;
+        return this;
+    }
+
+    public String[] keys() {
+        return keys != null ? keys : new String[] { columns.get(0).column };
+    }
+
+    public List<ColumnMapping> columnMappings() {
+        return Collections.unmodifiableList(columns);
+    }
+
+    public String[] columns() {
+        return columns.stream().map(column -> column.column).toArray(String[]::new);
+    }
+}
+
 final class SqlInsertion {
 
+    public static String of(String table, String[] columns) {
+        String[] parameters = new String[columns.length];
+        Arrays.fill(parameters, "?");
+        return "insert into " + table + "(" + String.join(",", columns) + ") values(" + String.join(",", parameters) + ")";
+    }
+
+    // Column list of an insertion, e.g. { "school_code", "school_name", "state_code" } for SCHOOLS
+    public static String[] columns(String insertion) {
+        String list = insertion.substring(insertion.indexOf('(') + 1, insertion.indexOf(')'));
+        return list.split(Delimiter.COMMA);
+    }
+
     public static final String
-    
-        CAPITAL_REVENUES = 
-        "insert into capital_revenues(" +
-            "capital_revenue_id," +
-            "local_government_capital_revenue," +
-            "state_government_capital_revenue," +
-            "federal_government_capital_revenue," +
-            "other_capital_revenue" +
-        ") values(?,?,?,?,?)",
-
-        COLLECTION_EXPENDITURES = 
-        "insert into collection_expenditures(" +
-            "collection_expenditure_id," +
-            "print_collection_expenditures," +
-            "digital_collection_expenditures," +
-            "other_collection_expenditures" +
-        ") values(?,?,?,?)",
-
-        COUNTIES =
-        "insert into counties(" +
-            "state_code,"+
-            "county_code," +
-            "county_population," +
-            "county_name" +
-        ") values(?,?,?,?)",
-
-        DATABASES_COUNTS = 
-        "insert into databases_counts(" +
-            "databases_count_id," +
-            "local_cooperative_agreements," +
-            "state_licensed_databases" +
-        ") values(?,?,?)",
-
-        EMPLOYEE_EXPENDITURES = 
-        "insert into employee_expenditures(" +
-            "employee_expenditure_id," +
-            "salaries," +
-            "benefits" +
-        ") values(?,?,?)",
-
-        LIBRARIES = 
-        "insert into libraries(" +
-            "library_id," +
-            "library_name," +
-            "street_address," +
-            "city," +
-            "zipcode," +
-            "longitude," +
-            "latitude," +
-            "state_code," +
-            "county_code," +
-            "staff_members_count_id," +
-            "operating_revenue_id," +
-            "employee_expenditure_id," +
-            "collection_expenditure_id," +
-            "capital_revenue_id," +
-            "databases_count_id" +
-        ") values(?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)",
-
-        OPERATING_REVENUES = 
-        "insert into operating_revenues(" +
-            "operating_revenue_id," +
-            "local_government_operating_revenue," +
-            "state_government_operating_revenue," +
-            "federal_government_operating_revenue," +
-            "other_operating_revenue" +
-        ") values(?,?,?,?,?)",
-
-        STAFF_MEMBERS_COUNTS = 
-        "insert into staff_members_counts(" +
-            "staff_members_count_id," +
-            "librarians," +
-            "employees" +
-        ") values(?,?,?)",
-
-        STATES = 
-        "insert into states(" +
-            "state_code," +
-            "state_alpha_code" +
-        ") values(?,?)",
-        
+
         SCHOOLS =
         "insert into schools(" +
             "school_code," +